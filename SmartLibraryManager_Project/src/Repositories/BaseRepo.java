@@ -0,0 +1,197 @@
+package Repositories;
+
+import util.JpaUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+// أساس مشترك للـ repos: CRUD + عمليات جماعية (batch) داخل transaction واحدة
+public abstract class BaseRepo<T> {
+
+    // لازم يطابق eclipselink.jdbc.batch-writing.size في persistence.xml
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    protected final Class<T> type;
+    private final String entityName;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    protected BaseRepo(Class<T> type) {
+        this.type = type;
+        this.entityName = type.getSimpleName();
+    }
+
+    public int getBatchSize() { return batchSize; }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be > 0");
+        this.batchSize = batchSize;
+    }
+
+    // ====== CRUD ======
+
+    public T add(T e) {
+        return JpaUtil.inTransaction(em -> {
+            em.persist(e);
+            return e;
+        });
+    }
+
+    // merge لنسخة detached: لو حدا غيّر الصف بعد ما قريناها → OptimisticLockException (ما بنعيد،
+    // لأن إعادة نفس النسخة القديمة رح تتعارض كمان؛ اللي فوق لازم يعيد التحميل)
+    public T update(T e) {
+        return JpaUtil.inTransaction(em -> em.merge(e));
+    }
+
+    // id جديد → persist ، غير هيك → merge
+    public T save(T e) {
+        return JpaUtil.inTransaction(em -> isNew(em, e) ? persist(em, e) : em.merge(e));
+    }
+
+    public void deleteById(int id) {
+        JpaUtil.inTransactionWithRetry(em -> {
+            T found = em.find(type, id);
+            if (found != null) em.remove(found);
+            return null;
+        });
+    }
+
+    public T findById(int id) {
+        return JpaUtil.read(em -> em.find(type, id));
+    }
+
+    public List<T> findAll() {
+        return JpaUtil.read(em ->
+                em.createQuery("SELECT e FROM " + entityName + " e ORDER BY e.id", type)
+                  .getResultList());
+    }
+
+    // ====== Keyset pagination ======
+    // بدل OFFSET: نكمل من آخر صف شفناه (sortKey, id) → تكلفة الصفحة ثابتة مهما كبر الجدول
+
+    // الأعمدة المسموح الترتيب عليها (whitelist لأنها بتنحط بنص الـ JPQL)
+    protected Set<String> sortableFields() {
+        return Set.of("id");
+    }
+
+    // أول صفحة: lastId = null
+    public List<T> findPageAfter(Integer lastId, int limit) {
+        return findPageAfter(lastId, null, "id", true, limit);
+    }
+
+    public List<T> findPageAfter(Integer lastId, Object lastSortValue, String sortKey, boolean ascending, int limit) {
+        StringBuilder jpql = new StringBuilder("SELECT e FROM ").append(entityName).append(" e");
+        appendKeyset(jpql, "e", lastId, sortKey, ascending);
+
+        return JpaUtil.read(em -> {
+            TypedQuery<T> q = em.createQuery(jpql.toString(), type).setMaxResults(limit);
+            bindKeyset(q, lastId, lastSortValue, sortKey);
+            return q.getResultList();
+        });
+    }
+
+    // WHERE (بعد آخر صف) + ORDER BY (sortKey, id) على الـ alias المعطى؛ بتستعملها الـ repos لاستعلامات الـ projection
+    protected void appendKeyset(StringBuilder jpql, String alias, Integer lastId, String sortKey, boolean ascending) {
+        if (!sortableFields().contains(sortKey)) {
+            throw new IllegalArgumentException("Not a sortable field: " + sortKey);
+        }
+        String dir = ascending ? "ASC" : "DESC";
+        String cmp = ascending ? ">" : "<";
+        String k = alias + "." + sortKey;
+        String id = alias + ".id";
+        boolean byId = "id".equals(sortKey);
+
+        if (lastId != null) {
+            if (byId) {
+                jpql.append(" WHERE ").append(id).append(' ').append(cmp).append(" :lastId");
+            } else {
+                jpql.append(" WHERE (").append(k).append(' ').append(cmp).append(" :lastKey")
+                    .append(" OR (").append(k).append(" = :lastKey AND ").append(id).append(' ').append(cmp).append(" :lastId))");
+            }
+        }
+        jpql.append(" ORDER BY ");
+        if (!byId) jpql.append(k).append(' ').append(dir).append(", ");
+        jpql.append(id).append(' ').append(dir);
+    }
+
+    protected static void bindKeyset(Query q, Integer lastId, Object lastSortValue, String sortKey) {
+        if (lastId == null) return;
+        q.setParameter("lastId", lastId);
+        if (!"id".equals(sortKey)) q.setParameter("lastKey", lastSortValue);
+    }
+
+    // ====== عمليات جماعية ======
+    // كل العمليات بتصير بـ transaction واحدة، مع flush كل batchSize صف
+    // (EclipseLink batch writing بيجمع الـ statements بـ JDBC batch واحد)
+
+    public List<T> saveAll(Collection<? extends T> items) {
+        boolean owner = JpaUtil.currentEntityManager() == null;
+        return JpaUtil.inTransaction(em -> {
+            List<T> out = new ArrayList<>(items.size());
+            int n = 0;
+            for (T e : items) {
+                out.add(isNew(em, e) ? persist(em, e) : em.merge(e));
+                if (++n % batchSize == 0) flushChunk(em, owner);
+            }
+            return out;
+        });
+    }
+
+    public List<T> updateAll(Collection<? extends T> items) {
+        boolean owner = JpaUtil.currentEntityManager() == null;
+        return JpaUtil.inTransaction(em -> {
+            List<T> out = new ArrayList<>(items.size());
+            int n = 0;
+            for (T e : items) {
+                out.add(em.merge(e));
+                if (++n % batchSize == 0) flushChunk(em, owner);
+            }
+            return out;
+        });
+    }
+
+    // DELETE ... WHERE id IN (...) على دفعات؛ يرجّع عدد الصفوف المحذوفة
+    public int deleteAllById(Collection<Integer> ids) {
+        if (ids.isEmpty()) return 0;
+        List<Integer> all = new ArrayList<>(ids);
+        int removed = JpaUtil.inTransaction(em -> {
+            int deleted = 0;
+            for (int i = 0; i < all.size(); i += batchSize) {
+                List<Integer> chunk = all.subList(i, Math.min(i + batchSize, all.size()));
+                deleted += em.createQuery("DELETE FROM " + entityName + " e WHERE e.id IN :ids")
+                             .setParameter("ids", chunk)
+                             .executeUpdate();
+            }
+            return deleted;
+        });
+        evictCache();
+        return removed;
+    }
+
+    // ====== مساعدات ======
+
+    // الكتابات اللي ما بتمر عبر الـ persistence context (DELETE جماعي، JDBC) ما بتحدّث الـ L2 cache لحالها
+    protected void evictCache() {
+        JpaUtil.evict(type);
+    }
+
+    private T persist(EntityManager em, T e) {
+        em.persist(e);
+        return e;
+    }
+
+    private boolean isNew(EntityManager em, T e) {
+        Object id = em.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(e);
+        return id == null || (id instanceof Number && ((Number) id).longValue() == 0);
+    }
+
+    // لو احنا اللي فتحنا الـ unit of work، بنفضّي الـ persistence context عشان الذاكرة تضل ثابتة
+    private void flushChunk(EntityManager em, boolean owner) {
+        em.flush();
+        if (owner) em.clear();
+    }
+}
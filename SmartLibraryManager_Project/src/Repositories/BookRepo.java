@@ -3,117 +3,76 @@ package Repositories;
 import entities.Book;
 import util.JpaUtil;
 
-import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
-public class BookRepo {
+public class BookRepo extends BaseRepo<Book> {
 
-    // إنشاء سجل جديد
-    public Book add(Book b) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            em.persist(b);
-            tx.commit();
-            return b;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
+    public BookRepo() {
+        super(Book.class);
     }
 
-    // تحديث سجل موجود
-    public Book update(Book b) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            Book merged = em.merge(b);
-            tx.commit();
-            return merged;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
-    }
-
-    // (اختياري) Save موحّدة
-    public Book save(Book b) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            if (b.getId() == null || b.getId() == 0) {
-                em.persist(b);
-            } else {
-                b = em.merge(b);
-            }
-            tx.commit();
-            return b;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
-    }
-
-    public void deleteById(int id) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            Book found = em.find(Book.class, id);
-            if (found != null) em.remove(found);
-            tx.commit();
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
-    }
-
-    public Book findById(int id) {
-        EntityManager em = JpaUtil.getEntityManager();
-        try { return em.find(Book.class, id); }
-        finally { em.close(); }
+    @Override
+    protected Set<String> sortableFields() {
+        return Set.of("id", "title", "author");
     }
 
+    // Book.findAll / Book.findAvailable عليهم query results cache (شوفي entities.Book)
+    @Override
     public List<Book> findAll() {
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            return em.createQuery("SELECT b FROM Book b ORDER BY b.id", Book.class)
-                     .getResultList();
-        } finally { em.close(); }
+        return JpaUtil.read(em -> em.createNamedQuery("Book.findAll", Book.class).getResultList());
     }
 
     public List<Book> findAvailable() {
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            // بما أن status عبارة عن String عندك، هذا الاستعلام صحيح
-            return em.createQuery(
-                    "SELECT b FROM Book b WHERE b.status = 'AVAILABLE' ORDER BY b.title",
-                    Book.class
-            ).getResultList();
-        } finally { em.close(); }
+        // بما أن status عبارة عن String عندك، هذا الاستعلام صحيح
+        return JpaUtil.read(em -> em.createNamedQuery("Book.findAvailable", Book.class).getResultList());
     }
 
     // ✅ المطلوب في الورقة: updateStatus(id, status) — الآن باستخدام String
     public int updateStatus(int id, String status) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
+        return JpaUtil.inTransactionWithRetry(em -> {
             Book b = em.find(Book.class, id);
             if (b == null) {
-                tx.commit();     // لم يتم تحديث شيء
-                return 0;
+                return 0;     // لم يتم تحديث شيء
             }
             b.setStatus(status);  // تأكدي أن عندك getter/setter للحقل status في Book
-            tx.commit();
             return 1;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
+        });
+    }
+
+    // كل العناوين الموجودة (lowercase) — للتحقق من التكرار بالذاكرة بدل COUNT لكل كتاب
+    public Set<String> findAllTitlesLower() {
+        return JpaUtil.read(em -> new HashSet<>(em.createQuery(
+                "SELECT LOWER(b.title) FROM Book b", String.class
+        ).getResultList()));
+    }
+
+    // إدخال دفعة كتب بـ JDBC batch واحد (بدون persist لكل كتاب)؛ يرجّع عدد الصفوف
+    public int insertBatch(List<Book> books) {
+        if (books.isEmpty()) return 0;
+        int n = JpaUtil.inTransaction(em -> {
+            Connection c = em.unwrap(Connection.class);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO books (title, author, status, version) VALUES (?, ?, ?, ?)")) {
+                for (Book b : books) {
+                    ps.setString(1, b.getTitle());
+                    ps.setString(2, b.getAuthor());
+                    ps.setString(3, b.getStatus());
+                    ps.setLong(4, 0L);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                return books.size();
+            } catch (SQLException ex) {
+                throw new PersistenceException("Batch insert failed: " + ex.getMessage(), ex);
+            }
+        });
+        evictCache();
+        return n;
     }
 }
@@ -3,73 +3,104 @@ package Repositories;
 import entities.Borrowing;
 import entities.Member;
 import entities.Book;
+import entities.MemberLoanStats;
 import util.JpaUtil;
 
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.ScrollableCursor;
+
 import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.TypedQuery;
+
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 
-public class BorrowingRepo {
+public class BorrowingRepo extends BaseRepo<Borrowing> {
 
-    // حفظ إعارة: لو id جديد → persist ، غير هيك → merge
-    public Borrowing save(Borrowing br) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            if (br.getId() == null || br.getId() == 0) {
-                em.persist(br);
-            } else {
-                br = em.merge(br);
-            }
-            tx.commit();
-            return br;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
+    public BorrowingRepo() {
+        super(Borrowing.class);
     }
 
     // CRUD بسيطة (اختياري استخدامها)
+    @Override
     public Borrowing add(Borrowing br) { return save(br); }
+    @Override
     public Borrowing update(Borrowing br) { return save(br); }
 
-    public void deleteById(int id) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            Borrowing found = em.find(Borrowing.class, id);
-            if (found != null) em.remove(found);
-            tx.commit();
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
+    @Override
+    public List<Borrowing> findAll() {
+        return JpaUtil.read(em -> em.createQuery(
+                "SELECT br FROM Borrowing br ORDER BY br.borrowDate DESC",
+                Borrowing.class
+        ).getResultList());
     }
 
-    public Borrowing findById(int id) {
-        EntityManager em = JpaUtil.getEntityManager();
-        try { return em.find(Borrowing.class, id); }
-        finally { em.close(); }
+    @Override
+    protected Set<String> sortableFields() {
+        return Set.of("id", "borrowDate");
     }
 
-    public List<Borrowing> findAll() {
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            return em.createQuery(
-                "SELECT br FROM Borrowing br ORDER BY br.borrowDate DESC",
-                Borrowing.class
-            ).getResultList();
-        } finally { em.close(); }
+    // ====== Read model لجدول الهيستوري ======
+    // صفوف classes.Borrowing مباشرة من SQL واحد (constructor expression):
+    // بدون entities بالـ persistence context وبدون نسخ أو maps جانبية للعناوين والأسماء
+
+    private static final String HISTORY_ROW =
+            "SELECT NEW classes.Borrowing(br.id, b.id, b.title, m.id, m.name, br.borrowDate, br.returnDate) " +
+            "FROM Borrowing br JOIN br.book b JOIN br.member m";
+
+    // صفحات keyset على (sortKey, id) زي findPageAfter
+    public List<classes.Borrowing> findHistoryPage(Integer lastId, Object lastSortValue, String sortKey,
+                                                   boolean ascending, int limit) {
+        StringBuilder jpql = new StringBuilder(HISTORY_ROW);
+        appendKeyset(jpql, "br", lastId, sortKey, ascending);
+        return JpaUtil.read(em -> {
+            TypedQuery<classes.Borrowing> q = em.createQuery(jpql.toString(), classes.Borrowing.class)
+                                                .setMaxResults(limit);
+            bindKeyset(q, lastId, lastSortValue, sortKey);
+            return q.getResultList();
+        });
     }
 
+    // بحث بالهيستوري على القاعدة: رقم → member id ، نص → عنوان الكتاب ، + تاريخ الإعارة (اختياري)
+    public List<classes.Borrowing> searchHistory(String text, LocalDate date, int limit) {
+        String q = text == null ? "" : text.trim();
+        boolean byMember = q.matches("\\d+");
+        StringBuilder jpql = new StringBuilder(HISTORY_ROW).append(" WHERE 1 = 1");
+        if (!q.isEmpty()) {
+            jpql.append(byMember ? " AND m.id = :mid" : " AND LOWER(b.title) LIKE :t");
+        }
+        if (date != null) jpql.append(" AND br.borrowDate = :d");
+        jpql.append(" ORDER BY br.id DESC");
+
+        return JpaUtil.read(em -> {
+            var query = em.createQuery(jpql.toString(), classes.Borrowing.class).setMaxResults(limit);
+            if (!q.isEmpty()) {
+                if (byMember) query.setParameter("mid", Integer.valueOf(q));
+                else query.setParameter("t", "%" + q.toLowerCase() + "%");
+            }
+            if (date != null) query.setParameter("d", date);
+            return query.getResultList();
+        });
+    }
+
+    // ====== تحميل مع الكتاب والعضو (fetch join) للتقارير والمهام ======
+
     // المطلوب: Active borrowings in range (returnDate IS NULL و BETWEEN :from AND :to)
+    // range على idx_borrowings_return_borrow
     public List<Borrowing> findActiveByRange(LocalDate from, LocalDate to) {
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            return em.createQuery(
+        return JpaUtil.read(em -> em.createQuery(
                 "SELECT br FROM Borrowing br " +
                 "WHERE br.returnDate IS NULL " +
                 "AND br.borrowDate BETWEEN :from AND :to " +
@@ -78,31 +109,77 @@ public class BorrowingRepo {
             )
             .setParameter("from", from)
             .setParameter("to", to)
-            .getResultList();
-        } finally { em.close(); }
+            .getResultList());
     }
 
-    // المطلوب: Overdues as of (asOf - 14 يوم)
+    // المطلوب: Overdues as of (موعد الإرجاع قبل asOf)
+    // range على idx_borrowings_return_due
     public List<Borrowing> findOverdue(LocalDate asOf) {
-        LocalDate asOfMinus14 = asOf.minusDays(14);
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            return em.createQuery(
+        return JpaUtil.read(em -> em.createQuery(
                 "SELECT br FROM Borrowing br " +
                 "WHERE br.returnDate IS NULL " +
-                "AND br.borrowDate <= :asOfMinus14 " +
-                "ORDER BY br.borrowDate",
+                "AND br.dueDate < :asOf " +
+                "ORDER BY br.dueDate",
                 Borrowing.class
             )
-            .setParameter("asOfMinus14", asOfMinus14)
-            .getResultList();
-        } finally { em.close(); }
+            .setParameter("asOf", asOf)
+            .getResultList());
+    }
+
+    // المتأخرة (موعدها قبل asOf) مع الكتاب والعضو؛ from/to على تاريخ الإعارة و text على العنوان أو الكاتب،
+    // null → بدون فلتر. الشروط بتنضاف بس لما تكون موجودة (زي reportQuery) فبيضل range على (return_date, due_date)
+    public List<Borrowing> findOverdueWithBookAndMember(LocalDate asOf, LocalDate from, LocalDate to, String text) {
+        String q = likePattern(text);
+        StringBuilder jpql = new StringBuilder(
+                "SELECT br FROM Borrowing br JOIN FETCH br.book b JOIN FETCH br.member " +
+                "WHERE br.returnDate IS NULL AND br.dueDate < :asOf");
+        if (from != null) jpql.append(" AND br.borrowDate >= :from");
+        if (to != null) jpql.append(" AND br.borrowDate <= :to");
+        if (q != null) jpql.append(TEXT_FILTER);
+        jpql.append(" ORDER BY br.dueDate ASC, br.id ASC");
+
+        return JpaUtil.read(em -> {
+            TypedQuery<Borrowing> query = em.createQuery(jpql.toString(), Borrowing.class)
+                                            .setParameter("asOf", asOf);
+            if (from != null) query.setParameter("from", from);
+            if (to != null) query.setParameter("to", to);
+            if (q != null) query.setParameter("q", q);
+            return query.getResultList();
+        });
+    }
+
+    // كل الإعارات المفتوحة كـ [id, bookId, memberId, dueDate] بدون JOIN (تحميل services.DueDateIndex)
+    public List<Object[]> findOpenDues() {
+        return JpaUtil.read(em -> em.createQuery(
+                "SELECT br.id, br.bookId, br.memberId, br.dueDate FROM Borrowing br WHERE br.returnDate IS NULL",
+                Object[].class)
+            .getResultList());
+    }
+
+    // إعارات مفتوحة بالـ id مع الكتاب والعضو، مرتبة حسب الموعد (lookup بالـ PK للصفوف المطلوبة بس)
+    public List<Borrowing> findOpenByIdsWithBookAndMember(Collection<Integer> ids) {
+        if (ids.isEmpty()) return List.of();
+        List<Integer> all = new ArrayList<>(ids);
+        List<Borrowing> out = new ArrayList<>(all.size());
+        JpaUtil.read(em -> {
+            for (int i = 0; i < all.size(); i += getBatchSize()) {
+                out.addAll(em.createQuery(
+                        "SELECT br FROM Borrowing br JOIN FETCH br.book JOIN FETCH br.member " +
+                        "WHERE br.id IN :ids AND br.returnDate IS NULL",
+                        Borrowing.class)
+                    .setParameter("ids", all.subList(i, Math.min(all.size(), i + getBatchSize())))
+                    .getResultList());
+            }
+            return null;
+        });
+        out.sort(Comparator.comparing(Borrowing::getDueDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                           .thenComparing(Borrowing::getId));
+        return out;
     }
 
     // المطلوب: هل الكتاب مُعار الآن؟
     public boolean existsActiveByBook(Book book) {
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
+        return JpaUtil.read(em -> {
             Long cnt = em.createQuery(
                 "SELECT COUNT(br) FROM Borrowing br " +
                 "WHERE br.book = :b AND br.returnDate IS NULL",
@@ -111,41 +188,382 @@ public class BorrowingRepo {
             .setParameter("b", book)
             .getSingleResult();
             return cnt != null && cnt > 0;
-        } finally { em.close(); }
+        });
     }
 
-    // المطلوب: عدد الإعارات النشطة لعضو
+    // المطلوب: عدد الإعارات النشطة لعضو (من العدّاد المخزّن، قراءة بالـ PK)
     public long countActiveByMember(Member member) {
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            Long cnt = em.createQuery(
-                "SELECT COUNT(br) FROM Borrowing br " +
-                "WHERE br.member = :m AND br.returnDate IS NULL",
-                Long.class
-            )
-            .setParameter("m", member)
-            .getSingleResult();
-            return cnt == null ? 0L : cnt;
-        } finally { em.close(); }
+        return JpaUtil.read(em -> (long) MemberLoanStatsRepo.current(em, member.getId()).getActiveLoans());
     }
 
     // المطلوب: إغلاق الإعارة (تعيين returnDate). يرجّع 1 لو اتحدث، 0 لو ما لقى/مغلق.
     public int closeBorrowing(int id, LocalDate returnDate) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            Borrowing br = em.find(Borrowing.class, id);
+        return JpaUtil.inTransactionWithRetry(em -> {
+            Borrowing br = em.find(Borrowing.class, id, LockModeType.PESSIMISTIC_WRITE);
             if (br == null || br.getReturnDate() != null) {
-                tx.commit();
                 return 0;
             }
+            int memberId = br.getMember().getId();
+            lockMember(em, memberId);
             br.setReturnDate(returnDate);
-            tx.commit();
+            em.flush();
+            MemberLoanStatsRepo.loansReturned(em, returnedBy(memberId, br.getDueDate()));
             return 1;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
+        });
+    }
+
+    // ====== التقارير (GROUP BY بالـ DB) ======
+    // وقت التقرير على عدد المجموعات مش على حجم الهيستوري؛ ولا entity بيتحمّل
+
+    // key: عنوان/كاتب (String، ممكن null) أو تاريخ (LocalDate)
+    public record Count(Object key, long count) {}
+
+    public record Stats(List<Count> byTitle, List<Count> byAuthor, List<Count> byDate) {
+        public long total() {
+            long n = 0;
+            for (Count c : byDate) n += c.count();
+            return n;
+        }
+    }
+
+    public record MemberActivity(int memberId, String name, long active, long returned) {}
+
+    // from/to على تاريخ الإعارة و text على العنوان أو الكاتب؛ null → بدون فلتر.
+    // التلات استعلامات بنفس الـ EntityManager
+    public Stats countStats(LocalDate from, LocalDate to, String text) {
+        String q = likePattern(text);
+        return JpaUtil.read(em -> new Stats(
+                counts(em, "b.title", from, to, q),
+                counts(em, "b.author", from, to, q),
+                counts(em, "br.borrowDate", from, to, q)));
+    }
+
+    // صف لكل عضو إله إعارات بالمدى، مرتب بالاسم؛ memberId = null → كل الأعضاء.
+    // COUNT(br.returnDate) بيعدّ المرجّعة بس (NULL ما بينعد)
+    public List<MemberActivity> findMemberActivity(LocalDate from, LocalDate to, Integer memberId, String text) {
+        String q = likePattern(text);
+        return JpaUtil.read(em -> {
+            List<MemberActivity> out = new ArrayList<>();
+            for (Object[] row : reportQuery(em,
+                    "SELECT m.id, m.name, COUNT(br), COUNT(br.returnDate) FROM Borrowing br JOIN br.book b JOIN br.member m",
+                    "GROUP BY m.id, m.name ORDER BY m.name ASC, m.id ASC", from, to, q, memberId)
+                    .getResultList()) {
+                long total = ((Number) row[2]).longValue(), returned = ((Number) row[3]).longValue();
+                out.add(new MemberActivity((Integer) row[0], (String) row[1], total - returned, returned));
+            }
+            return out;
+        });
+    }
+
+    private static List<Count> counts(EntityManager em, String key, LocalDate from, LocalDate to, String q) {
+        List<Count> out = new ArrayList<>();
+        for (Object[] row : reportQuery(em,
+                "SELECT " + key + ", COUNT(br) FROM Borrowing br JOIN br.book b",
+                "GROUP BY " + key, from, to, q, null)
+                .getResultList()) {
+            out.add(new Count(row[0], ((Number) row[1]).longValue()));
+        }
+        return out;
+    }
+
+    // الشروط بتنضاف بس لما تكون موجودة: "(:from IS NULL OR ...)" بيخلي القاعدة تعمل full scan
+    // بدل range على idx_borrowings_borrow_date
+    private static TypedQuery<Object[]> reportQuery(EntityManager em, String selectFrom, String tail,
+                                                    LocalDate from, LocalDate to, String q, Integer memberId) {
+        StringBuilder jpql = new StringBuilder(selectFrom).append(" WHERE br.borrowDate IS NOT NULL");
+        if (from != null) jpql.append(" AND br.borrowDate >= :from");
+        if (to != null) jpql.append(" AND br.borrowDate <= :to");
+        if (q != null) jpql.append(TEXT_FILTER);
+        if (memberId != null) jpql.append(" AND br.memberId = :memberId");
+        jpql.append(' ').append(tail);
+
+        TypedQuery<Object[]> query = em.createQuery(jpql.toString(), Object[].class);
+        if (from != null) query.setParameter("from", from);
+        if (to != null) query.setParameter("to", to);
+        if (q != null) query.setParameter("q", q);
+        if (memberId != null) query.setParameter("memberId", memberId);
+        return query;
+    }
+
+    // بحث "بيحتوي": % و _ من المستخدم حرفية (escape بـ !) زي contains() القديم، مش wildcards.
+    // '!' مش '\' لأن MySQL بيفسّر الـ backslash جوّا الـ string literal
+    private static final String TEXT_FILTER =
+            " AND (LOWER(b.title) LIKE :q ESCAPE '!' OR LOWER(b.author) LIKE :q ESCAPE '!')";
+
+    private static String likePattern(String text) {
+        if (text == null || text.isBlank()) return null;
+        String s = text.trim().toLowerCase()
+                       .replace("!", "!!")
+                       .replace("%", "!%")
+                       .replace("_", "!_");
+        return "%" + s + "%";
+    }
+
+    // ====== Checkout ======
+    // بدل قفل PESSIMISTIC_WRITE على الكتاب طول المعاملة:
+    //   1) قفل صف العضو + فحص الحد والمتأخرات من عدّاده المخزّن (MemberLoanStats، قراءة بالـ PK)
+    //   2) UPDATE مشروط: الكتاب بيصير Borrowed بس إذا كان Available → صف واحد أو صفر
+    //   3) INSERT الإعارة + تحديث العدّاد ثم commit
+    // الـ UPDATE المشروط هو اللي بيمنع الإعارة المزدوجة: عميل تاني على نفس الكتاب بيستنى
+    // قفل الصف لحد الـ commit وبعدين بيلاقي status = Borrowed فبيرجع 0
+    // (الـ UPDATE بيزيد version بإيده؛ UPDATE الجماعي ما بيعملها لحاله فنسخة detached قديمة بتتعارض صح)
+
+    public enum CheckoutStatus { OK, BOOK_UNAVAILABLE, MEMBER_MISSING, LIMIT_REACHED, HAS_OVERDUE }
+
+    public record Checkout(CheckoutStatus status, Borrowing borrowing, long activeCount) {
+        public boolean ok() { return status == CheckoutStatus.OK; }
+    }
+
+    public static final int LOAN_DAYS = Borrowing.LOAN_DAYS;
+
+    // maxActive <= 0 → بدون حد
+    public Checkout checkout(int bookId, int memberId, LocalDate borrowDate, int maxActive, boolean blockIfOverdue) {
+        Checkout result = JpaUtil.inTransaction(em -> {
+            Member member = lockMember(em, memberId);
+            if (member == null) return new Checkout(CheckoutStatus.MEMBER_MISSING, null, 0);
+
+            MemberLoanStats stats = MemberLoanStatsRepo.current(em, memberId);
+            int active = stats.getActiveLoans();
+            if (maxActive > 0 && active >= maxActive) {
+                return new Checkout(CheckoutStatus.LIMIT_REACHED, null, active);
+            }
+            if (blockIfOverdue && stats.hasOverdue(LocalDate.now())) {
+                return new Checkout(CheckoutStatus.HAS_OVERDUE, null, active);
+            }
+
+            if (!claimBook(em, bookId)) return new Checkout(CheckoutStatus.BOOK_UNAVAILABLE, null, active);
+
+            Borrowing br = new Borrowing(em.getReference(Book.class, bookId), member, borrowDate);
+            em.persist(br);
+            MemberLoanStatsRepo.loansAdded(em, stats, 1, br.getDueDate());
+            return new Checkout(CheckoutStatus.OK, br, active + 1);
+        });
+        // الـ UPDATE الجماعي ما بيمر عبر الـ persistence context
+        if (result.ok()) JpaUtil.evict(Book.class, bookId);
+        return result;
+    }
+
+    public record Basket(CheckoutStatus status, List<Borrowing> borrowings, List<Integer> unavailable,
+                         long activeCount) {
+        public boolean ok() { return status == CheckoutStatus.OK; }
+    }
+
+    // سلة كتب لعضو واحد بـ transaction واحدة: يا كلها يا ولا وحدة.
+    // الحد بينحسب مرة وحدة على (النشطة + حجم السلة)، وحجز الكتب UPDATE واحد لكل السلة.
+    // لو في كتب مش متاحة بنرجّعها كلها عشان الواجهة تشيلها من السلة
+    public Basket checkoutAll(int memberId, Collection<Integer> bookIds, LocalDate borrowDate,
+                              int maxActive, boolean blockIfOverdue) {
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        boolean joined = JpaUtil.currentEntityManager() != null;
+        Basket result;
+        try {
+            result = JpaUtil.inTransaction(em -> {
+                Member member = lockMember(em, memberId);
+                if (member == null) return new Basket(CheckoutStatus.MEMBER_MISSING, List.of(), List.of(), 0);
+
+                MemberLoanStats stats = MemberLoanStatsRepo.current(em, memberId);
+                int active = stats.getActiveLoans();
+                if (maxActive > 0 && active + ids.size() > maxActive) {
+                    return new Basket(CheckoutStatus.LIMIT_REACHED, List.of(), List.of(), active);
+                }
+                if (blockIfOverdue && stats.hasOverdue(LocalDate.now())) {
+                    return new Basket(CheckoutStatus.HAS_OVERDUE, List.of(), List.of(), active);
+                }
+
+                List<Integer> unavailable = unavailableBooks(em, ids);
+                if (!unavailable.isEmpty()) {
+                    return new Basket(CheckoutStatus.BOOK_UNAVAILABLE, List.of(), unavailable, active);
+                }
+                if (claimBooks(em, ids) != ids.size()) {
+                    // حدا سبقنا على كتاب بين الفحص والحجز → rollback للي انحجز
+                    if (joined) em.getTransaction().setRollbackOnly();
+                    throw new BasketRejected();
+                }
+
+                List<Borrowing> loans = new ArrayList<>(ids.size());
+                for (Integer id : ids) {
+                    Borrowing br = new Borrowing(em.getReference(Book.class, id), member, borrowDate);
+                    em.persist(br);
+                    loans.add(br);
+                }
+                MemberLoanStatsRepo.loansAdded(em, stats, ids.size(), loans.get(0).getDueDate());
+                return new Basket(CheckoutStatus.OK, loans, List.of(), active + ids.size());
+            });
+        } catch (BasketRejected r) {
+            List<Integer> unavailable = JpaUtil.read(em -> unavailableBooks(em, ids));
+            return new Basket(CheckoutStatus.BOOK_UNAVAILABLE, List.of(), unavailable, 0);
+        }
+        if (result.ok()) ids.forEach(id -> JpaUtil.evict(Book.class, id));
+        return result;
+    }
+
+    private static final class BasketRejected extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BasketRejected() {
+            super(null, null, false, false);
+        }
+    }
+
+    // الكتب من القائمة اللي مش Available (أو مش موجودة)
+    private static List<Integer> unavailableBooks(EntityManager em, List<Integer> ids) {
+        Set<Integer> available = new HashSet<>(em.createQuery(
+                "SELECT b.id FROM Book b WHERE b.id IN :ids AND LOWER(b.status) = 'available'", Integer.class)
+            .setParameter("ids", ids)
+            .getResultList());
+        List<Integer> out = new ArrayList<>();
+        for (Integer id : ids) if (!available.contains(id)) out.add(id);
+        return out;
+    }
+
+    private static int claimBooks(EntityManager em, List<Integer> ids) {
+        return em.createQuery(
+                "UPDATE Book b SET b.status = 'Borrowed', b.version = b.version + 1 " +
+                "WHERE b.id IN :ids AND LOWER(b.status) = 'available'")
+            .setParameter("ids", ids)
+            .executeUpdate();
+    }
+
+    // قفل قصير على صف العضو (أول statement بالمعاملة): checkouts نفس العضو بتمشي ورا بعض
+    // فعدّاده المقروء بعده دقيق والحد ما بينكسر؛ أعضاء مختلفين ما بيستنوا بعض.
+    // كل كتابة على MemberLoanStats (إعارة، إرجاع، reconcile) بتصير وهذا القفل ماسك
+    private static Member lockMember(EntityManager em, int memberId) {
+        return em.find(Member.class, memberId, LockModeType.PESSIMISTIC_WRITE);
+    }
+
+    // الكتاب بيصير Borrowed بس إذا كان Available
+    private static boolean claimBook(EntityManager em, int bookId) {
+        return em.createQuery(
+                "UPDATE Book b SET b.status = 'Borrowed', b.version = b.version + 1 " +
+                "WHERE b.id = :id AND LOWER(b.status) = 'available'")
+            .setParameter("id", bookId)
+            .executeUpdate() == 1;
+    }
+
+    // ====== Check-in ======
+    // نفس الفكرة: UPDATE مشروط على returnDate IS NULL، فالإرجاع المزدوج بيرجع 0 بدل ما يكتب فوق.
+    // الترتيب: قفل صف الإعارة (FOR UPDATE) ← قفل العضو ← الكتابات؛ عدّاد العضو بيتحدث بنفس الـ transaction
+
+    // يرجّع id الكتاب اللي رجع متاح، أو null لو الإعارة مش موجودة أو مرجّعة من قبل
+    public Integer checkin(int borrowingId, LocalDate returnDate) {
+        Integer bookId = JpaUtil.inTransaction(em -> {
+            List<Object[]> open = lockOpen(em, List.of(borrowingId));
+            if (open.isEmpty()) return null;
+            Object[] row = open.get(0);
+            int memberId = (Integer) row[2];
+            lockMember(em, memberId);
+
+            int closed = em.createQuery(
+                    "UPDATE Borrowing br SET br.returnDate = :d, br.version = br.version + 1 " +
+                    "WHERE br.id = :id AND br.returnDate IS NULL")
+                .setParameter("d", returnDate)
+                .setParameter("id", borrowingId)
+                .executeUpdate();
+            if (closed == 0) return null;   // حدا رجّعها بنفس اللحظة
+
+            Integer book = (Integer) row[1];
+            releaseBooks(em, List.of(book));
+            MemberLoanStatsRepo.loansReturned(em, returnedBy(memberId, (LocalDate) row[3]));
+            return book;
+        });
+        if (bookId != null) JpaUtil.evict(Book.class, bookId);
+        return bookId;
+    }
+
+    // إرجاع جماعي بـ transaction واحدة (statements ثابتة مهما كان العدد). يرجّع ids الكتب اللي رجعت متاحة؛
+    // الإعارات المرجّعة من قبل بتنتجاهل. لو إرجاع متزامن سبقنا لوحدة منها بنعيد العملية كلها
+    public List<Integer> checkinAll(Collection<Integer> borrowingIds, LocalDate returnDate) {
+        if (borrowingIds.isEmpty()) return List.of();
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(borrowingIds));
+        List<Integer> books = JpaUtil.inTransactionWithRetry(em -> {
+            List<Integer> open = new ArrayList<>();
+            List<Integer> bookIds = new ArrayList<>();
+            Map<Integer, MemberLoanStatsRepo.Returned> returned = new LinkedHashMap<>();
+            for (Object[] row : lockOpen(em, ids)) {
+                open.add((Integer) row[0]);
+                bookIds.add((Integer) row[1]);
+                returned.computeIfAbsent((Integer) row[2], k -> new MemberLoanStatsRepo.Returned())
+                        .add((LocalDate) row[3]);
+            }
+            if (open.isEmpty()) return List.<Integer>of();
+
+            // الأعضاء بالترتيب (نفس ترتيب reconcile) عشان ما يصير deadlock
+            em.createQuery("SELECT m.id FROM Member m WHERE m.id IN :ids ORDER BY m.id", Integer.class)
+                .setParameter("ids", returned.keySet())
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+
+            int closed = em.createQuery(
+                    "UPDATE Borrowing br SET br.returnDate = :d, br.version = br.version + 1 " +
+                    "WHERE br.id IN :ids AND br.returnDate IS NULL")
+                .setParameter("d", returnDate)
+                .setParameter("ids", open)
+                .executeUpdate();
+            if (closed != open.size()) {
+                throw new OptimisticLockException("Some borrowings were returned concurrently");
+            }
+            releaseBooks(em, bookIds);
+            MemberLoanStatsRepo.loansReturned(em, returned);
+            return bookIds;
+        });
+        books.forEach(id -> JpaUtil.evict(Book.class, id));
+        return books;
+    }
+
+    // [id, bookId, memberId, dueDate] للإعارات المفتوحة، مقفولة لحد آخر الـ transaction.
+    // أعمدة الـ FK مباشرة (br.book.id كان بيعمل JOIN، وFOR UPDATE كان يقفل الكتاب والعضو
+    // قبل دورهم → deadlock مع الـ checkout اللي بيقفل العضو ثم الكتاب)
+    private static List<Object[]> lockOpen(EntityManager em, List<Integer> ids) {
+        return em.createQuery(
+                "SELECT br.id, br.bookId, br.memberId, br.dueDate FROM Borrowing br " +
+                "WHERE br.id IN :ids AND br.returnDate IS NULL ORDER BY br.id",
+                Object[].class)
+            .setParameter("ids", ids)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+            .getResultList();
+    }
+
+    private static Map<Integer, MemberLoanStatsRepo.Returned> returnedBy(int memberId, LocalDate dueDate) {
+        MemberLoanStatsRepo.Returned r = new MemberLoanStatsRepo.Returned();
+        r.add(dueDate);
+        return Map.of(memberId, r);
+    }
+
+    private static void releaseBooks(EntityManager em, List<Integer> bookIds) {
+        em.createQuery(
+                "UPDATE Book b SET b.status = 'Available', b.version = b.version + 1 WHERE b.id IN :ids")
+            .setParameter("ids", bookIds)
+            .executeUpdate();
+    }
+
+    // عدد كل سجلات الإعارة (للـ progress)
+    public long countAll() {
+        return JpaUtil.read(em -> em.createQuery("SELECT COUNT(br) FROM Borrowing br", Long.class)
+                                    .getSingleResult());
+    }
+
+    // قراءة الهيستوري كاملة بـ cursor (fetch size ثابت) بدل تحميل الجدول بـ List.
+    // كل صف: [id, bookId, bookTitle, memberId, memberName, borrowDate, returnDate]
+    // الـ sink يرجّع false ليوقف القراءة (إلغاء). يرجّع عدد الصفوف المقروءة.
+    public long streamHistory(int fetchSize, Predicate<Object[]> sink) {
+        return JpaUtil.read(em -> {
+            ScrollableCursor cursor = (ScrollableCursor) em.createQuery(
+                    "SELECT br.id, b.id, b.title, m.id, m.name, br.borrowDate, br.returnDate " +
+                    "FROM Borrowing br JOIN br.book b JOIN br.member m " +
+                    "ORDER BY br.id")
+                .setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE)
+                .setHint(QueryHints.JDBC_FETCH_SIZE, fetchSize)
+                .getSingleResult();
+            long n = 0;
+            try {
+                while (cursor.hasNext()) {
+                    n++;
+                    if (!sink.test((Object[]) cursor.next())) break;
+                }
+            } finally {
+                cursor.close();
+            }
+            return n;
+        });
     }
 }
@@ -0,0 +1,223 @@
+package Repositories;
+
+import entities.FineAccrualRun;
+import entities.FineLedger;
+import entities.MemberFineBalance;
+import util.JpaUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// دفتر الغرامات (entities.FineLedger) + أرصدة الأعضاء (MemberFineBalance) بالسنتات.
+// accrue تراكمي: بيقرأ بس الإعارات اللي حالتها تغيّرت من آخر checkpoint (FineAccrualRun)
+// وبيكتب الفرق؛ تشغيله مرتين لنفس اليوم ما بيغيّر شي.
+// تشغيل واحد بالمرة على مستوى القاعدة (مش الـ JVM): أول صف بـ FineAccrualRun بيتقفل PESSIMISTIC_WRITE،
+// والـ checkpoint بيتقرا ويتقدّم تحت هالقفل بنفس الـ transaction، فـ client تاني على نفس MySQL بيستنى
+public class FineLedgerRepo extends BaseRepo<FineLedger> {
+
+    // نفس السعر القديم ($1 لكل يوم تأخير)
+    public static final long FINE_PER_DAY_CENTS = 100;
+
+    public FineLedgerRepo() {
+        super(FineLedger.class);
+    }
+
+    // loans: كم غرامة تغيّرت، postedCents: مجموع الفروقات (ممكن يكون سالب لو إرجاع انسجّل بتاريخ قديم)
+    public record Accrual(LocalDate asOf, int loans, long postedCents, int members) {}
+
+    // ====== القراءة ======
+
+    public long findOutstandingCents(int memberId) {
+        return JpaUtil.read(em -> {
+            MemberFineBalance b = em.find(MemberFineBalance.class, memberId);
+            return b == null ? 0L : b.getBalanceCents();
+        });
+    }
+
+    // SUM على جدول الأرصدة (صف لكل عضو عليه غرامة) مش على الإعارات
+    public long findTotalOutstandingCents() {
+        return JpaUtil.read(em -> {
+            Long sum = em.createQuery("SELECT SUM(b.balanceCents) FROM MemberFineBalance b", Long.class)
+                         .getSingleResult();
+            return sum == null ? 0L : sum;
+        });
+    }
+
+    public long countMembersWithFines() {
+        return JpaUtil.read(em -> em.createQuery(
+                "SELECT COUNT(b) FROM MemberFineBalance b WHERE b.balanceCents > 0", Long.class)
+            .getSingleResult());
+    }
+
+    // غرامات مجموعة إعارات بالـ PK (الإعارات بدون غرامة مش بالـ map)
+    public Map<Integer, FineLedger> findByBorrowingIds(Collection<Integer> borrowingIds) {
+        Map<Integer, FineLedger> out = new HashMap<>();
+        if (borrowingIds.isEmpty()) return out;
+        List<Integer> all = new ArrayList<>(borrowingIds);
+        JpaUtil.read(em -> {
+            for (int i = 0; i < all.size(); i += getBatchSize()) {
+                for (FineLedger f : em.createQuery(
+                        "SELECT f FROM FineLedger f WHERE f.borrowingId IN :ids", FineLedger.class)
+                    .setParameter("ids", all.subList(i, Math.min(all.size(), i + getBatchSize())))
+                    .getResultList()) {
+                    out.put(f.getBorrowingId(), f);
+                }
+            }
+            return null;
+        });
+        return out;
+    }
+
+    public FineAccrualRun findLastRun() {
+        return JpaUtil.read(em -> em.createQuery(
+                "SELECT r FROM FineAccrualRun r ORDER BY r.id DESC", FineAccrualRun.class)
+            .setMaxResults(1)
+            .getResultStream().findFirst().orElse(null));
+    }
+
+    // ====== الـ accrual ======
+
+    public Accrual accrue(LocalDate asOf) {
+        int anchor = anchorRunId();
+        return JpaUtil.inTransaction(em -> {
+            // أول statement بالـ transaction وقفل بالـ PK (بدون gap locks): القراءات بعده (حتى بـ REPEATABLE READ)
+            // بتشوف كل اللي كتبه التشغيل اللي قبلنا
+            em.find(FineAccrualRun.class, anchor, LockModeType.PESSIMISTIC_WRITE);
+            FineAccrualRun last = findLastRun();
+            Integer m = em.createQuery("SELECT MAX(br.id) FROM Borrowing br", Integer.class).getSingleResult();
+            int maxId = m == null ? 0 : m;
+            List<Integer> ids = new ArrayList<>(changedSince(em, asOf, last));
+
+            int loans = 0;
+            long posted = 0;
+            TreeSet<Integer> members = new TreeSet<>();
+            for (int i = 0; i < ids.size(); i += getBatchSize()) {
+                Posted p = post(em, ids.subList(i, Math.min(ids.size(), i + getBatchSize())), asOf);
+                // الدفعة بتنكتب وبتطلع من الـ persistence context (الأقفال بتضل لآخر الـ transaction)
+                em.flush();
+                em.clear();
+                loans += p.loans();
+                for (Map.Entry<Integer, Long> e : p.delta().entrySet()) {
+                    if (e.getValue() == 0) continue;
+                    members.add(e.getKey());
+                    posted += e.getValue();
+                }
+            }
+
+            em.persist(new FineAccrualRun(asOf, maxId, loans, posted));
+            return new Accrual(asOf, loans, posted, members.size());
+        });
+    }
+
+    // أول صف بسجل التشغيلات (ما بينمسح وما بيتغيّر) هو صف القفل. قفل آخر صف بدل منه كان رح يتعارض مع
+    // الـ INSERT تبع الـ checkpoint الجديد. القاعدة الفاضية بتاخد صف بداية: lastBorrowingId = 0 → أول تشغيل
+    // بيفحص كل الإعارات (زي ما كان بدون checkpoint)
+    private static int anchorRunId() {
+        Integer id = JpaUtil.read(em -> em.createQuery(
+                "SELECT MIN(r.id) FROM FineAccrualRun r", Integer.class).getSingleResult());
+        if (id != null) return id;
+        JpaUtil.runInTransaction(em -> em.persist(new FineAccrualRun(LocalDate.EPOCH, 0, 0, 0)));
+        return anchorRunId();
+    }
+
+    // الإعارات اللي غرامتها ممكن تكون تغيّرت:
+    //  - مفتوحة ومتأخرة وما انحسبت لليوم (range scan على return_date, due_date)
+    //  - غرامة مفتوحة وإعارتها رجعت (لازم تتسكّر على تاريخ الإرجاع)
+    //  - رجعت متأخرة وما إلها غرامة: أجدد من الـ checkpoint، أو رجعت بعده
+    //    (إعارة ما كانت متأخرة وقت الـ checkpoint موعدها ≥ تاريخه، فإرجاعها المتأخر كمان بعده)
+    private static Collection<Integer> changedSince(EntityManager em, LocalDate asOf, FineAccrualRun last) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        ids.addAll(em.createQuery(
+                "SELECT br.id FROM Borrowing br WHERE br.returnDate IS NULL AND br.dueDate < :asOf " +
+                "AND NOT EXISTS (SELECT f FROM FineLedger f WHERE f.borrowingId = br.id AND f.accruedThrough >= :asOf)",
+                Integer.class)
+            .setParameter("asOf", asOf)
+            .getResultList());
+        ids.addAll(em.createQuery(
+                "SELECT f.borrowingId FROM FineLedger f, Borrowing br " +
+                "WHERE f.closed = false AND br.id = f.borrowingId AND br.returnDate IS NOT NULL",
+                Integer.class)
+            .getResultList());
+        ids.addAll(em.createQuery(
+                "SELECT br.id FROM Borrowing br WHERE br.returnDate IS NOT NULL AND br.dueDate < br.returnDate " +
+                "AND (br.id > :lastId OR br.returnDate >= :since) " +
+                "AND NOT EXISTS (SELECT f FROM FineLedger f WHERE f.borrowingId = br.id)",
+                Integer.class)
+            // أول تشغيل: lastId = 0 → كل الإعارات (since ما إله دور)
+            .setParameter("lastId", last == null ? 0 : last.getLastBorrowingId())
+            .setParameter("since", last == null ? asOf : last.getAsOf())
+            .getResultList());
+        return ids;
+    }
+
+    // loans: كم صف غرامة انكتب، delta: عضو → مجموع الفرق
+    private record Posted(int loans, Map<Integer, Long> delta) {}
+
+    // chunk جوّا transaction الـ accrual: صفوف الغرامات مقفولة، والفرق بينزل برصيد كل عضو
+    private static Posted post(EntityManager em, List<Integer> ids, LocalDate asOf) {
+        Map<Integer, FineLedger> fines = new HashMap<>();
+        for (FineLedger f : em.createQuery(
+                "SELECT f FROM FineLedger f WHERE f.borrowingId IN :ids", FineLedger.class)
+            .setParameter("ids", ids)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+            .getResultList()) {
+            fines.put(f.getBorrowingId(), f);
+        }
+
+        Map<Integer, Long> delta = new TreeMap<>();
+        int loans = 0;
+        for (Object[] row : em.createQuery(
+                "SELECT br.id, br.memberId, br.dueDate, br.returnDate FROM Borrowing br WHERE br.id IN :ids",
+                Object[].class)
+            .setParameter("ids", ids)
+            .getResultList()) {
+            Integer id = (Integer) row[0];
+            Integer memberId = (Integer) row[1];
+            LocalDate due = (LocalDate) row[2];
+            LocalDate returned = (LocalDate) row[3];
+            if (due == null) continue;
+
+            boolean closed = returned != null && !returned.isAfter(asOf);
+            LocalDate through = closed ? returned : asOf;
+            int days = (int) Math.max(0, ChronoUnit.DAYS.between(due, through));
+            long cents = days * FINE_PER_DAY_CENTS;
+
+            FineLedger f = fines.get(id);
+            if (f == null) {
+                if (days == 0) continue;
+                f = new FineLedger(id, memberId);
+                em.persist(f);
+            }
+            long diff = cents - f.getAmountCents();
+            if (diff == 0 && f.isClosed() == closed && through.equals(f.getAccruedThrough())) continue;
+            loans++;
+            f.setDays(days);
+            f.setAmountCents(cents);
+            f.setAccruedThrough(through);
+            f.setClosed(closed);
+            delta.merge(memberId, diff, Long::sum);
+        }
+
+        // الأرصدة بترتيب الأعضاء (TreeMap): ترتيب أقفال ثابت عشان ما يصير deadlock
+        for (Map.Entry<Integer, Long> e : delta.entrySet()) {
+            if (e.getValue() == 0) continue;
+            MemberFineBalance b = em.find(MemberFineBalance.class, e.getKey(), LockModeType.PESSIMISTIC_WRITE);
+            if (b == null) {
+                em.persist(new MemberFineBalance(e.getKey(), e.getValue()));
+            } else {
+                b.setBalanceCents(b.getBalanceCents() + e.getValue());
+            }
+        }
+        return new Posted(loans, delta);
+    }
+}
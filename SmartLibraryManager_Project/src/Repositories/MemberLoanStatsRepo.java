@@ -0,0 +1,179 @@
+package Repositories;
+
+import entities.MemberLoanStats;
+import util.JpaUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// العدّاد المخزّن لكل عضو (entities.MemberLoanStats).
+// التحديث بيصير من BorrowingRepo بنفس transaction الإعارة/الإرجاع وصف العضو مقفول؛
+// reconcile بيعيد بناءه من جدول الإعارات ويرجّع الفروقات
+public class MemberLoanStatsRepo extends BaseRepo<MemberLoanStats> {
+
+    public MemberLoanStatsRepo() {
+        super(MemberLoanStats.class);
+    }
+
+    // قراءة بالـ PK؛ لو الصف لسا ما انبنى (عضو جديد أو قاعدة قديمة) بينحسب من الإعارات بدون ما ينكتب
+    public MemberLoanStats findForMember(int memberId) {
+        return JpaUtil.read(em -> current(em, memberId));
+    }
+
+    // ====== الصيانة (جوّا transaction وصف العضو مقفول) ======
+
+    // الصف المُدار، أو صف جديد محسوب من الإعارات (مش persisted لسا، loansAdded بيحفظه)
+    static MemberLoanStats current(EntityManager em, int memberId) {
+        MemberLoanStats s = em.find(MemberLoanStats.class, memberId);
+        if (s != null) return s;
+        MemberLoanStats computed = compute(em, List.of(memberId)).get(memberId);
+        return computed != null ? computed : new MemberLoanStats(memberId, 0, null);
+    }
+
+    static void loansAdded(EntityManager em, MemberLoanStats s, int count, LocalDate due) {
+        s.setActiveLoans(s.getActiveLoans() + count);
+        // إعارة بدون borrowDate ما إلها dueDate، وما بتغيّر الأقرب (MIN بـ compute بيتجاهل الـ null)
+        if (due != null && (s.getEarliestDue() == null || due.isBefore(s.getEarliestDue()))) {
+            s.setEarliestDue(due);
+        }
+        if (!em.contains(s)) em.persist(s);
+    }
+
+    // بعد ما انسكّرت الإعارات (returnDate انكتب بنفس الـ transaction).
+    // returned: عضو → [عدد المرجّع، أقرب موعد بينها]؛ أقرب موعد بيتعاد حسابه بس لو المرجّع كان هو الأقرب
+    static void loansReturned(EntityManager em, Map<Integer, Returned> returned) {
+        List<Integer> recompute = new ArrayList<>();
+        for (Map.Entry<Integer, Returned> e : returned.entrySet()) {
+            MemberLoanStats s = em.find(MemberLoanStats.class, e.getKey());
+            if (s == null) {
+                // أول مرة: الحساب من الإعارات بيشمل الإرجاع الحالي
+                recompute.add(e.getKey());
+                continue;
+            }
+            s.setActiveLoans(Math.max(0, s.getActiveLoans() - e.getValue().count));
+            if (s.getActiveLoans() == 0) {
+                s.setEarliestDue(null);
+            } else if (s.getEarliestDue() == null || e.getValue().earliestDue == null
+                    || !e.getValue().earliestDue.isAfter(s.getEarliestDue())) {
+                // ما بنعرف إذا المرجّع كان الأقرب → نحسبه من جديد
+                recompute.add(e.getKey());
+            }
+        }
+        if (recompute.isEmpty()) return;
+
+        Map<Integer, MemberLoanStats> actual = compute(em, recompute);
+        for (Integer id : recompute) {
+            MemberLoanStats a = actual.get(id);
+            MemberLoanStats s = em.find(MemberLoanStats.class, id);
+            if (s == null) {
+                em.persist(a != null ? a : new MemberLoanStats(id, 0, null));
+            } else {
+                s.setActiveLoans(a == null ? 0 : a.getActiveLoans());
+                s.setEarliestDue(a == null ? null : a.getEarliestDue());
+            }
+        }
+    }
+
+    static final class Returned {
+        int count;
+        LocalDate earliestDue;
+
+        // due ممكن يكون null (إعارة قديمة بدون borrowDate): بتنعدّ بس ما بتدخل بالأقرب
+        void add(LocalDate due) {
+            count++;
+            if (due != null && (earliestDue == null || due.isBefore(earliestDue))) earliestDue = due;
+        }
+    }
+
+    // العدّ الحقيقي من جدول الإعارات لمجموعة أعضاء بـ SQL واحد (الأعضاء بدون إعارات نشطة مش بالـ map)
+    static Map<Integer, MemberLoanStats> compute(EntityManager em, Collection<Integer> memberIds) {
+        Map<Integer, MemberLoanStats> out = new HashMap<>();
+        for (Object[] row : em.createQuery(
+                "SELECT br.memberId, COUNT(br), MIN(br.dueDate) FROM Borrowing br " +
+                "WHERE br.memberId IN :ids AND br.returnDate IS NULL GROUP BY br.memberId",
+                Object[].class)
+            .setParameter("ids", memberIds)
+            .getResultList()) {
+            Integer id = (Integer) row[0];
+            out.put(id, new MemberLoanStats(id, ((Number) row[1]).intValue(), (LocalDate) row[2]));
+        }
+        return out;
+    }
+
+    // ====== Reconciliation ======
+
+    // عضو عدّاده المخزّن مختلف عن الحقيقي
+    public record Drift(int memberId, MemberLoanStats stored, MemberLoanStats actual) {
+        @Override
+        public String toString() {
+            return "member " + memberId + ": stored " + stored.getActiveLoans() + " active, due " + stored.getEarliestDue()
+                    + " → actual " + actual.getActiveLoans() + " active, due " + actual.getEarliestDue();
+        }
+    }
+
+    // نتيجة chunk: كم عضو انفحص، كم صف انبنى لأول مرة (مش drift)، والفروقات اللي انصلحت
+    public record Reconciled(int checked, int created, List<Drift> drift) {}
+
+    // كل ids الأعضاء بالترتيب (لتقسيمهم chunks)
+    public List<Integer> findMemberIds() {
+        return JpaUtil.read(em -> em.createQuery("SELECT m.id FROM Member m ORDER BY m.id", Integer.class)
+                                    .getResultList());
+    }
+
+    // يعيد بناء عدّادات مجموعة أعضاء بـ transaction وحدة ويرجّع اللي كان غلط.
+    // الأعضاء بينقفلوا بالترتيب فإعارة/إرجاع متزامن لنفس العضو بيستنى لحد ما نخلص.
+    // chunks مختلفة ممكن تشتغل بالتوازي (أعضاء مختلفين ما بيقفلوا بعض)
+    public Reconciled reconcile(List<Integer> memberIds) {
+        if (memberIds.isEmpty()) return new Reconciled(0, 0, List.of());
+        return JpaUtil.inTransaction(em -> {
+            List<Integer> ids = em.createQuery(
+                    "SELECT m.id FROM Member m WHERE m.id IN :ids ORDER BY m.id", Integer.class)
+                .setParameter("ids", memberIds)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+            if (ids.isEmpty()) return new Reconciled(0, 0, List.of());
+
+            Map<Integer, MemberLoanStats> stored = new HashMap<>();
+            for (MemberLoanStats s : em.createQuery(
+                    "SELECT s FROM MemberLoanStats s WHERE s.id IN :ids", MemberLoanStats.class)
+                .setParameter("ids", ids)
+                .getResultList()) {
+                stored.put(s.getId(), s);
+            }
+            Map<Integer, MemberLoanStats> actual = compute(em, ids);
+
+            List<Drift> drift = new ArrayList<>();
+            int created = 0;
+            for (Integer id : ids) {
+                MemberLoanStats s = stored.get(id);
+                MemberLoanStats a = actual.getOrDefault(id, new MemberLoanStats(id, 0, null));
+                if (s == null) {
+                    // صف لسا ما انبنى (الـ checkout بيبنيه لحاله أول مرة)
+                    em.persist(a);
+                    created++;
+                } else if (s.getActiveLoans() != a.getActiveLoans()
+                        || !Objects.equals(s.getEarliestDue(), a.getEarliestDue())) {
+                    drift.add(new Drift(id, new MemberLoanStats(id, s.getActiveLoans(), s.getEarliestDue()), a));
+                    s.setActiveLoans(a.getActiveLoans());
+                    s.setEarliestDue(a.getEarliestDue());
+                }
+            }
+            return new Reconciled(ids.size(), created, drift);
+        });
+    }
+
+    // صفوف لأعضاء انحذفوا
+    public int deleteOrphans() {
+        return JpaUtil.inTransaction(em -> em.createQuery(
+                "DELETE FROM MemberLoanStats s WHERE s.id NOT IN (SELECT m.id FROM Member m)")
+            .executeUpdate());
+    }
+}
@@ -3,85 +3,66 @@ package Repositories;
 import entities.Member;
 import util.JpaUtil;
 
-import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public class MemberRepo{
+public class MemberRepo extends BaseRepo<Member> {
 
-    public Member add(Member m) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            em.persist(m);
-            tx.commit();
-            return m;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
+    public MemberRepo() {
+        super(Member.class);
     }
 
-    public Member update(Member m) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            Member merged = em.merge(m);
-            tx.commit();
-            return merged;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
+    @Override
+    protected Set<String> sortableFields() {
+        return Set.of("id", "name");
     }
 
-    public void deleteById(int id) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            Member found = em.find(Member.class, id);
-            if (found != null) em.remove(found);
-            tx.commit();
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
+    // Member.findAll عليه query results cache (شوفي entities.Member)
+    @Override
+    public List<Member> findAll() {
+        return JpaUtil.read(em -> em.createNamedQuery("Member.findAll", Member.class).getResultList());
     }
 
-    public Member findById(int id) {
-        EntityManager em = JpaUtil.getEntityManager();
-        try { return em.find(Member.class, id); }
-        finally { em.close(); }
+    // هل في عضو تاني بنفس الـ contact؟ (ignoreId = null للإضافة)
+    public boolean existsContact(String contact, Integer ignoreId) {
+        return JpaUtil.read(em -> !em.createQuery(
+                "SELECT m.id FROM Member m WHERE LOWER(m.contact) = :c AND (:ignore IS NULL OR m.id <> :ignore)",
+                Integer.class)
+            .setParameter("c", contact.toLowerCase())
+            .setParameter("ignore", ignoreId)
+            .setMaxResults(1)
+            .getResultList()
+            .isEmpty());
     }
 
-    public List<Member> findAll() {
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            return em.createQuery("SELECT m FROM Member m ORDER BY m.id", Member.class)
-                     .getResultList();
-        } finally { em.close(); }
-    }
-    
-    
-     public Member save(Member m) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            // غيّري الشرط حسب نوع الـ id في Member (Integer/Long)
-            if (m.getId() == null || m.getId() == 0) {
-                em.persist(m);
-            } else {
-                m = em.merge(m);
+    // id → اسم لمجموعة أعضاء (projection بدون entities، على دفعات)
+    public Map<Integer, String> findNamesByIds(Collection<Integer> ids) {
+        Map<Integer, String> out = new HashMap<>();
+        if (ids.isEmpty()) return out;
+        List<Integer> all = new ArrayList<>(ids);
+        JpaUtil.read(em -> {
+            for (int i = 0; i < all.size(); i += getBatchSize()) {
+                for (Object[] row : em.createQuery(
+                        "SELECT m.id, m.name FROM Member m WHERE m.id IN :ids", Object[].class)
+                    .setParameter("ids", all.subList(i, Math.min(all.size(), i + getBatchSize())))
+                    .getResultList()) {
+                    out.put((Integer) row[0], (String) row[1]);
+                }
             }
-            tx.commit();
-            return m;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
+            return null;
+        });
+        return out;
+    }
+
+    public List<Member> searchByName(String q) {
+        return JpaUtil.read(em -> em.createQuery(
+                "SELECT m FROM Member m WHERE LOWER(m.name) LIKE :q ORDER BY m.name, m.id",
+                Member.class)
+            .setParameter("q", "%" + q.toLowerCase() + "%")
+            .getResultList());
     }
 }
@@ -3,77 +3,23 @@ package Repositories;
 import entities.User;
 import util.JpaUtil;
 
-import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
 import javax.persistence.NoResultException;
-import java.util.List;
 
-public class UserRepo {
+public class UserRepo extends BaseRepo<User> {
 
-    public User add(User u) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            em.persist(u);
-            tx.commit();
-            return u;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
-    }
-
-    public User update(User u) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            User merged = em.merge(u);
-            tx.commit();
-            return merged;
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
-    }
-
-    public void deleteById(int id) {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-            User found = em.find(User.class, id);
-            if (found != null) em.remove(found);
-            tx.commit();
-        } catch (RuntimeException ex) {
-            if (tx.isActive()) tx.rollback();
-            throw ex;
-        } finally { em.close(); }
-    }
-
-    public User findById(int id) {
-        EntityManager em = JpaUtil.getEntityManager();
-        try { return em.find(User.class, id); }
-        finally { em.close(); }
-    }
-
-    public List<User> findAll() {
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            return em.createQuery("SELECT u FROM User u ORDER BY u.id", User.class)
-                     .getResultList();
-        } finally { em.close(); }
+    public UserRepo() {
+        super(User.class);
     }
 
     public User findByEmail(String email) {
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            return em.createQuery("SELECT u FROM User u WHERE u.email = :email", User.class)
-                     .setParameter("email", email)
-                     .getSingleResult();
-        } catch (NoResultException e) {
-            return null;
-        } finally { em.close(); }
+        return JpaUtil.read(em -> {
+            try {
+                return em.createQuery("SELECT u FROM User u WHERE u.email = :email", User.class)
+                         .setParameter("email", email)
+                         .getSingleResult();
+            } catch (NoResultException e) {
+                return null;
+            }
+        });
     }
 }
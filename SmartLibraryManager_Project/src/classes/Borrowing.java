@@ -7,6 +7,8 @@ public class Borrowing {
     private int id;
     private int bookId;
     private int memberId;
+    private String bookTitle;
+    private String memberName;
     private LocalDate borrowDate;
     private LocalDate returnDate; 
 
@@ -15,6 +17,12 @@ public class Borrowing {
         this.id = id; this.bookId = bookId; this.memberId = memberId;
         this.borrowDate = borrowDate; this.returnDate = returnDate;
     }
+    // صف جاهز للعرض (JPQL constructor expression) مع عنوان الكتاب واسم العضو
+    public Borrowing(int id, int bookId, String bookTitle, int memberId, String memberName,
+                     LocalDate borrowDate, LocalDate returnDate) {
+        this(id, bookId, memberId, borrowDate, returnDate);
+        this.bookTitle = bookTitle; this.memberName = memberName;
+    }
 
     public int getId() { return id; }
     public void setId(int v) { this.id = v; }
@@ -25,6 +33,12 @@ public class Borrowing {
     public int getMemberId() { return memberId; }
     public void setMemberId(int v) { this.memberId = v; }
 
+    public String getBookTitle() { return bookTitle; }
+    public void setBookTitle(String v) { this.bookTitle = v; }
+
+    public String getMemberName() { return memberName; }
+    public void setMemberName(String v) { this.memberName = v; }
+
     public LocalDate getBorrowDate() { return borrowDate; }
     public void setBorrowDate(LocalDate v) { this.borrowDate = v; }
 
@@ -1,5 +1,6 @@
 package controllers;
 
+import java.io.File;
 import java.net.URL;
 import java.util.List;
 import java.util.ResourceBundle;
@@ -15,6 +16,7 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import entities.Book;               
@@ -22,6 +24,8 @@ import util.JpaUtil;
 import javax.persistence.EntityManager;
 
 import Repositories.BookRepo;       
+import tasks.ImportBooksTask;
+import util.TaskExecutor;
 
 public class BooksController implements Initializable {
 
@@ -45,11 +49,25 @@ public class BooksController implements Initializable {
     @FXML
     private ComboBox<String> sortComboBox;
 
+    @FXML
+    private Button importBtn, cancelImportBtn;
+    @FXML
+    private ProgressBar importProgress;
+    @FXML
+    private Label importStatus;
+
+    private ImportBooksTask importTask;
+
     private final ObservableList<Book> data = FXCollections.observableArrayList();
 
 
     private final BookRepo bookRepo = new BookRepo();
 
+    private PagedTable<Book> pager;
+
+    // القراءة والكتابة على القاعدة بالخلفية (search/save/delete)، الـ pager إله تبعه
+    private final FxCommands commands = new FxCommands();
+
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         statusCombo.setItems(FXCollections.observableArrayList("Available", "Borrowed"));
@@ -60,6 +78,8 @@ public class BooksController implements Initializable {
         authorCol.setCellValueFactory(new PropertyValueFactory<>("author"));
         statusCol.setCellValueFactory(new PropertyValueFactory<>("status"));
         table.setItems(data);
+        pager = new PagedTable<>(table, data, PagedTable.DEFAULT_PAGE_SIZE, sortedFetcher("id", true));
+        pager.setOnError(ex -> error("Load Error", ex.getMessage()));
 
         textSearchFeild.setPromptText("Enter book title");
 
@@ -106,21 +126,23 @@ public class BooksController implements Initializable {
         if (!valid(title, author, status)) {
             return;
         }
-        if (existsTitle(title, -1)) {
-            warn("Duplicate Title", "This title already exists.");
-            return;
-        }
 
-        try {
-            Book b = new Book(title, author);
-            b.setStatus(status);
-            bookRepo.add(b);                 
+        Book b = new Book(title, author);
+        b.setStatus(status);
+        // فحص التكرار والإضافة بنفس الأمر؛ كبسة تانية وهو شغّال بتنتجاهل
+        commands.once("save", () -> {
+            if (existsTitle(title, -1)) return false;
+            bookRepo.add(b);
+            return true;
+        }, added -> {
+            if (!added) {
+                warn("Duplicate Title", "This title already exists.");
+                return;
+            }
             info("Success", "Book added.");
             clearAndUnselect();
             refreshTable();
-        } catch (Exception e) {
-            error("Insert Error", e.getMessage());
-        }
+        }, e -> error("Insert Error", e.getMessage()));
     }
 
     @FXML
@@ -135,22 +157,39 @@ public class BooksController implements Initializable {
         if (!valid(title, author, status)) {
             return;
         }
-        if (existsTitle(title, sel.getId())) {
-            warn("Duplicate Title", "Another book has the same title.");
+        if (commands.isRunning("save")) {
             return;
         }
 
-        try {
-            sel.setTitle(title);
-            sel.setAuthor(author);
-            sel.setStatus(status);
+        // الصف بيتعدّل هون (FX thread) مش بالخلفية، وبيرجع زي ما كان لو العنوان مكرر
+        String oldTitle = sel.getTitle(), oldAuthor = sel.getAuthor(), oldStatus = sel.getStatus();
+        sel.setTitle(title);
+        sel.setAuthor(author);
+        sel.setStatus(status);
+        commands.once("save", () -> {
+            if (existsTitle(title, sel.getId())) return false;
             bookRepo.update(sel);            // JPA: تحديث
+            return true;
+        }, updated -> {
+            if (!updated) {
+                sel.setTitle(oldTitle);
+                sel.setAuthor(oldAuthor);
+                sel.setStatus(oldStatus);
+                warn("Duplicate Title", "Another book has the same title.");
+                return;
+            }
             info("Updated", "Book updated.");
             clearAndUnselect();
             refreshTable();
-        } catch (Exception e) {
+        }, e -> {
+            if (util.JpaUtil.isOptimisticLockFailure(e)) {
+                warn("Changed Elsewhere", "This book was changed by another user. The list has been reloaded, please edit again.");
+                clearAndUnselect();
+                refreshTable();
+                return;
+            }
             error("Update Error", e.getMessage());
-        }
+        });
     }
 
     @FXML
@@ -161,21 +200,87 @@ public class BooksController implements Initializable {
             return;
         }
 
-        if (hasActiveBorrow(sel.getId())) {
-            warn("Can't delete", "This book is currently borrowed. Please mark it as returned first.");
+        int id = sel.getId();
+        commands.once("save", () -> {
+            if (hasActiveBorrow(id)) return false;
+            bookRepo.deleteById(id);     // JPA: حذف
+            return true;
+        }, deleted -> {
+            if (!deleted) {
+                warn("Can't delete", "This book is currently borrowed. Please mark it as returned first.");
+                return;
+            }
+            info("Deleted", "Book deleted.");
+            clearAndUnselect();
+            refreshTable();
+        }, e -> error("Delete Error", e.getMessage()));
+    }
+
+    // ====== استيراد CSV (title,author,status) ======
+    @FXML
+    private void handleImportCsv(ActionEvent event) {
+        if (importTask != null && importTask.isRunning()) {
+            return;
+        }
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Import Books CSV");
+        fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+        File f = fc.showOpenDialog(table.getScene().getWindow());
+        if (f == null) {
             return;
         }
 
-        try {
-            bookRepo.deleteById(sel.getId()); // JPA: حذف
-            info("Deleted", "Book deleted.");
-            clearAndUnselect();
+        importTask = new ImportBooksTask(f.toPath());
+        importProgress.progressProperty().bind(importTask.progressProperty());
+        importStatus.textProperty().bind(importTask.messageProperty());
+        importProgress.visibleProperty().bind(importTask.runningProperty());
+        cancelImportBtn.visibleProperty().bind(importTask.runningProperty());
+        importBtn.disableProperty().bind(importTask.runningProperty());
+
+        importTask.setOnSucceeded(e -> {
+            finishImport();
+            info("Import Finished", importTask.getValue());
             refreshTable();
-        } catch (Exception e) {
-            error("Delete Error", e.getMessage());
+        });
+        importTask.setOnCancelled(e -> {
+            finishImport();
+            importStatus.setText("Import canceled.");
+            refreshTable();
+        });
+        importTask.setOnFailed(e -> {
+            finishImport();
+            importStatus.setText("Import failed.");
+            error("Import Error", importTask.getException() == null ? "" : importTask.getException().getMessage());
+            refreshTable();
+        });
+
+        try {
+            TaskExecutor.shared().execute(TaskExecutor.Lane.BATCH, importTask);
+        } catch (java.util.concurrent.RejectedExecutionException ex) {
+            finishImport();
+            importStatus.setText("Import couldn't start.");
+            error("Busy", ex.getMessage());
         }
     }
 
+    @FXML
+    private void handleCancelImport(ActionEvent event) {
+        if (importTask != null) {
+            importTask.cancel();
+        }
+    }
+
+    private void finishImport() {
+        importProgress.progressProperty().unbind();
+        importStatus.textProperty().unbind();
+        importProgress.visibleProperty().unbind();
+        cancelImportBtn.visibleProperty().unbind();
+        importBtn.disableProperty().unbind();
+        importProgress.setVisible(false);
+        cancelImportBtn.setVisible(false);
+        importBtn.setDisable(false);
+    }
+
     @FXML
     private void handleSearchButton(ActionEvent event) {
         String q = t(textSearchFeild);
@@ -184,24 +289,26 @@ public class BooksController implements Initializable {
             return;
         }
 
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            List<Book> list = em.createQuery(
-                    "SELECT b FROM Book b WHERE LOWER(b.title) LIKE :q ORDER BY b.title",
-                    Book.class
-            )
-                    .setParameter("q", "%" + q.toLowerCase() + "%")
-                    .getResultList();
-
-            data.setAll(list);
-            table.setItems(data);
+        // بحث جديد بيلغي اللي قبله، وصفحة جاية من الترتيب ما عاد إلها لزوم
+        pager.cancel();
+        commands.latest("search", () -> {
+            EntityManager em = JpaUtil.getEntityManager();
+            try {
+                return em.createQuery(
+                        "SELECT b FROM Book b WHERE LOWER(b.title) LIKE :q ORDER BY b.title",
+                        Book.class
+                )
+                        .setParameter("q", "%" + q.toLowerCase() + "%")
+                        .getResultList();
+            } finally {
+                em.close();
+            }
+        }, list -> {
+            // النتائج بقائمة منفصلة عشان الـ pager ما يكمّل عليها صفحات
+            table.setItems(FXCollections.observableArrayList(list));
             table.refresh();
-            info("Search Results", "Found " + data.size() + " matching book(s).");
-        } catch (Exception e) {
-            error("Search Error", e.getMessage());
-        } finally {
-            em.close();
-        }
+            info("Search Results", "Found " + list.size() + " matching book(s).");
+        }, e -> error("Search Error", e.getMessage()));
     }
 
     @FXML
@@ -213,42 +320,46 @@ public class BooksController implements Initializable {
     }
 
 private void applySort(String key) {
-    if (key == null || key.isBlank()) {
-        return;
-    }
+        if (key == null || key.isBlank()) {
+            return;
+        }
 
-    String jpqlOrder = switch (key) {
-        case "Sort by Title (A-Z)" -> "ORDER BY b.title ASC";
-        case "Sort by Title (Z-A)" -> "ORDER BY b.title DESC";
-        case "Sort by Author (A-Z)" -> "ORDER BY b.author ASC";
-        case "Sort by Author (Z-A)" -> "ORDER BY b.author DESC";
-        default -> "ORDER BY b.id DESC";
-    };
-
-    EntityManager em = JpaUtil.getEntityManager();
-    try {
-        List<Book> list = em.createQuery(
-                "SELECT b FROM Book b " + jpqlOrder, Book.class
-        ).getResultList();
-
-        data.setAll(list);
-        table.refresh();
-    } catch (Exception e) {
-        error("Sort Error", e.getMessage());
-    } finally {
-        em.close(); 
+        // ترتيب على مستوى القاعدة + صفحات keyset (sortKey, id)
+        String field;
+        boolean asc;
+        switch (key) {
+            case "Sort by Title (A-Z)" -> { field = "title"; asc = true; }
+            case "Sort by Title (Z-A)" -> { field = "title"; asc = false; }
+            case "Sort by Author (A-Z)" -> { field = "author"; asc = true; }
+            case "Sort by Author (Z-A)" -> { field = "author"; asc = false; }
+            default -> { field = "id"; asc = false; }
+        }
+
+        // كبسة ترتيب تانية قبل ما توصل الأولى بتلغيها (PagedTable)
+        commands.cancel("search");
+        pager.reset(sortedFetcher(field, asc));
     }
-}
 
+    private PagedTable.PageFetcher<Book> sortedFetcher(String field, boolean asc) {
+        return (last, limit) -> {
+            if (last == null) {
+                return bookRepo.findPageAfter(null, null, field, asc, limit);
+            }
+            Object key = switch (field) {
+                case "title" -> last.getTitle();
+                case "author" -> last.getAuthor();
+                default -> last.getId();
+            };
+            return bookRepo.findPageAfter(last.getId(), key, field, asc, limit);
+        };
+    }
 
     private void refreshTable() {
-        try {
-            data.setAll(bookRepo.findAll());
-        } catch (Exception e) {
-            error("Load Error", e.getMessage());
-        }
+        commands.cancel("search");
+        pager.reset(sortedFetcher("id", true));
     }
 
+    // existsTitle و hasActiveBorrow بينادوا من جوّا أوامر الخلفية
     private boolean existsTitle(String title, int ignoreId) {
         String t = title == null ? "" : title.trim().toLowerCase();
         EntityManager em = JpaUtil.getEntityManager();
@@ -354,6 +465,8 @@ private void applySort(String key) {
 
     @FXML
     private void handleBackToDashboard(ActionEvent e) {
+        commands.cancel("search");
+        pager.cancel();
         try {
             Parent root = FXMLLoader.load(getClass().getResource("/smartlibrarymanager_project/fxml_files/dashboard.fxml"));
             Stage st = (Stage) ((Node) e.getSource()).getScene().getWindow();
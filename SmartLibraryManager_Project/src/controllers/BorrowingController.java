@@ -17,20 +17,18 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.ListCell;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
+import java.io.File;
 import java.net.URL;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
-
-import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
-import javax.persistence.LockModeType;
 
 import javafx.concurrent.Task;
-import util.JpaUtil;
+import util.TaskExecutor;
+import util.TaskExecutor.Lane;
 
 public class BorrowingController implements Initializable {
 
@@ -54,6 +52,12 @@ public class BorrowingController implements Initializable {
     @FXML
     private Button markReturnedBtn;
 
+    // السلة
+    @FXML
+    private ListView<Book> basketList;
+    @FXML
+    private Button addToBasketBtn, removeFromBasketBtn, checkoutBasketBtn;
+
     @FXML
     private TextField textSearchFeild;
     @FXML
@@ -71,7 +75,7 @@ public class BorrowingController implements Initializable {
     @FXML
     private Label statusBorrow;
     @FXML
-    private Button btnRefreshHistory, btnGenerateReminders, btnCalculateFines, btnCancelTask;
+    private Button btnRefreshHistory, btnGenerateReminders, btnCalculateFines, btnExportHistory, btnReconcileCounters, btnCancelTask;
     @FXML
     private TextArea outputBorrow;
 
@@ -79,18 +83,24 @@ public class BorrowingController implements Initializable {
     private final ObservableList<Book> availableBooks = FXCollections.observableArrayList();
     private final ObservableList<Member> members = FXCollections.observableArrayList();
     private final ObservableList<Borrowing> history = FXCollections.observableArrayList();
-    private final Map<Integer, String> bookTitle = new HashMap<>();
-    private final Map<Integer, String> memberName = new HashMap<>();
+    private final ObservableList<Book> basket = FXCollections.observableArrayList();
     private final List<Book> allBooks = new ArrayList<>();
 
-    // سياسات (قابلة للتعديل لاحقاً)
-    private static final boolean POLICY_MAX_ACTIVE = true;
-    private static final int MAX_ACTIVE_BORROWS = 5;
-    private static final boolean POLICY_BLOCK_IF_OVERDUE = true;
+    private final Repositories.BorrowingRepo borrowingRepo = new Repositories.BorrowingRepo();
+    private final Repositories.BookRepo bookRepo = new Repositories.BookRepo();
+    private final Repositories.MemberRepo memberRepo = new Repositories.MemberRepo();
+    private PagedTable<Borrowing> historyPager;
+    private static final int SEARCH_LIMIT = 500;
+
+    // قواعد الإعارة والإرجاع (الحد الأقصى، المتأخرات) صارت بالـ service
+    private final services.BorrowingService borrowingService = new services.BorrowingService();
 
     // مؤشر المهمة الحالية (للإلغاء)
     private Task<?> currentBorrowTask;
 
+    // أزرار الإعارة/الإرجاع والقوائم والبحث: القاعدة بالخلفية والنتيجة على الشاشة
+    private final FxCommands commands = new FxCommands();
+
     @Override
     public void initialize(URL url, java.util.ResourceBundle rb) {
         borrowDate.setValue(LocalDate.now());
@@ -98,20 +108,30 @@ public class BorrowingController implements Initializable {
         // أعمدة الجدول
         hIdCol.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(c.getValue().getId()));
         hBookCol.setCellValueFactory(c -> new ReadOnlyStringWrapper(
-                bookTitle.getOrDefault(c.getValue().getBookId(), "Unknown (" + c.getValue().getBookId() + ")")));
+                orUnknown(c.getValue().getBookTitle(), c.getValue().getBookId())));
         hMemberCol.setCellValueFactory(c -> new ReadOnlyStringWrapper(
-                memberName.getOrDefault(c.getValue().getMemberId(), "Unknown (" + c.getValue().getMemberId() + ")")));
+                orUnknown(c.getValue().getMemberName(), c.getValue().getMemberId())));
         hDateCol.setCellValueFactory(c -> new ReadOnlyStringWrapper(
                 c.getValue().getBorrowDate() == null ? "" : c.getValue().getBorrowDate().toString()));
         hReturnCol.setCellValueFactory(c -> new ReadOnlyStringWrapper(
                 c.getValue().getReturnDate() == null ? "" : c.getValue().getReturnDate().toString()));
         historyTable.setItems(history);
+        historyTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        historyPager = new PagedTable<>(historyTable, history, PagedTable.DEFAULT_PAGE_SIZE, historyFetcher("id", false));
+        historyPager.setOnError(ex -> {
+            if (statusBorrow != null) {
+                statusBorrow.setText("Loading history failed: " + ex.getMessage());
+            }
+        });
 
         // تحميل القوائم
         loadMembers();
         loadBooks();
         setupComboRenderers();
         bookCombo.setItems(availableBooks);
+        if (basketList != null) {
+            basketList.setItems(basket);
+        }
         memberCombo.setItems(members);
         loadHistory();
 
@@ -150,156 +170,219 @@ public class BorrowingController implements Initializable {
             return;
         }
 
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-
-            // قفل تشارُكي على صف الكتاب لمنع السباق
-            entities.Book eb = em.find(entities.Book.class, b.getId(), LockModeType.PESSIMISTIC_WRITE);
-            if (eb == null) {
-                tx.rollback();
-                warn("Book Missing", "Selected book no longer exists.");
-                reloadLists();
-                return;
-            }
-            if (!"available".equalsIgnoreCase(eb.getStatus())) {
-                tx.rollback();
-                warn("Unavailable", "Selected book is already borrowed.");
-                reloadLists();
-                return;
-            }
-
-            entities.Member emem = em.find(entities.Member.class, m.getId());
-            if (emem == null) {
-                tx.rollback();
-                warn("Member Missing", "Selected member no longer exists.");
-                reloadLists();
-                return;
-            }
-
-            // سياسات: حدّ أقصى إعارات نشطة
-            Long activeCount = em.createQuery(
-                    "SELECT COUNT(br) FROM Borrowing br " +
-                            "WHERE br.member.id = :mid AND br.returnDate IS NULL", Long.class)
-                    .setParameter("mid", m.getId())
-                    .getSingleResult();
-
-            if (POLICY_MAX_ACTIVE && activeCount >= MAX_ACTIVE_BORROWS) {
-                tx.rollback();
-                warn("Policy Violation",
-                        "Member already has " + activeCount + " active borrowings (limit " + MAX_ACTIVE_BORROWS + ").");
-                return;
-            }
-
-            // سياسات: حظر إذا لدى العضو متأخرات
-            Long overdueCount = em.createQuery(
-                    "SELECT COUNT(br) FROM Borrowing br " +
-                            "WHERE br.member.id = :mid AND br.returnDate IS NULL AND br.borrowDate < :cutoff",
-                    Long.class)
-                    .setParameter("mid", m.getId())
-                    .setParameter("cutoff", LocalDate.now().minusDays(14))
-                    .getSingleResult();
-
-            if (POLICY_BLOCK_IF_OVERDUE && overdueCount > 0) {
-                tx.rollback();
-                warn("Member has overdue items", "Member has overdue items.");
-                return;
+        // نفس الـ key للإعارة والسلة: كبسة تانية وهي شغّالة بتنتجاهل
+        commands.once("checkout", () -> borrowingService.borrow(b.getId(), m.getId(), d), r -> {
+            switch (r.status()) {
+                case MEMBER_MISSING:
+                    warn("Member Missing", "Selected member no longer exists.");
+                    reloadLists();
+                    return;
+                case BOOK_UNAVAILABLE:
+                    warn("Unavailable", "Selected book is already borrowed.");
+                    reloadLists();
+                    return;
+                case LIMIT_REACHED:
+                    warn("Policy Violation",
+                            "Member already has " + r.activeCount() + " active borrowings (limit " + borrowingService.getMaxActive() + ").");
+                    return;
+                case HAS_OVERDUE:
+                    warn("Member has overdue items", "Member has overdue items.");
+                    return;
+                default:
+                    break;
             }
 
-            entities.Borrowing br = new entities.Borrowing();
-            br.setBook(eb);
-            br.setMember(emem);
-            br.setBorrowDate(d);
-            br.setReturnDate(null);
-            em.persist(br);
-
-            eb.setStatus("Borrowed");
-            em.merge(eb);
-
-            tx.commit();
-
             allBooks.stream().filter(x -> x.getId() == b.getId()).findFirst().ifPresent(x -> x.setStatus("Borrowed"));
             availableBooks.removeIf(x -> x.getId() == b.getId());
-            history.add(0, new Borrowing(br.getId(), b.getId(), m.getId(), d, null));
+            history.add(0, new Borrowing(r.borrowing().getId(), b.getId(), b.getTitle(), m.getId(), m.getName(), d, null));
             info("Success", "Borrow recorded.");
 
             bookCombo.getSelectionModel().clearSelection();
             memberCombo.getSelectionModel().clearSelection();
             borrowDate.setValue(LocalDate.now());
-
-        } catch (Exception ex) {
-            if (tx.isActive()) {
-                tx.rollback();
-            }
-            warn("DB Error", ex.getMessage());
-        } finally {
-            em.close();
-        }
+        }, ex -> warn("DB Error", ex.getMessage()));
     }
 
+
     @FXML
     private void handleMarkReturned(ActionEvent e) {
-        Borrowing sel = historyTable.getSelectionModel().getSelectedItem();
-        if (sel == null) {
+        List<Borrowing> selected = new ArrayList<>(historyTable.getSelectionModel().getSelectedItems());
+        if (selected.isEmpty()) {
             warn("No Selection", "Select a borrowing record from the table.");
             return;
         }
-        if (sel.getReturnDate() != null) {
-            warn("Already Returned", "This record is already marked as returned.");
+        List<Borrowing> open = new ArrayList<>();
+        for (Borrowing b : selected) {
+            if (b != null && b.getReturnDate() == null) open.add(b);
+        }
+        if (open.isEmpty()) {
+            warn("Already Returned", selected.size() == 1
+                    ? "This record is already marked as returned."
+                    : "All selected records are already marked as returned.");
+            return;
+        }
+        if (open.size() > 1) {
+            returnSelected(open);
             return;
         }
+        Borrowing sel = open.get(0);
 
         LocalDate today = LocalDate.now();
 
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-
-            entities.Borrowing br = em.find(entities.Borrowing.class, sel.getId());
-            if (br == null) {
-                tx.rollback();
-                warn("Missing", "Borrowing record not found.");
+        commands.once("return", () -> borrowingService.returnBook(sel.getId(), today), returned -> {
+            if (!returned) {
+                warn("Missing", "Borrowing record not found or already returned.");
+                loadHistory();
                 return;
             }
 
-            br.setReturnDate(today);
-            em.merge(br);
+            sel.setReturnDate(today);
+            historyTable.refresh();
+            markAvailable(sel);
 
-            entities.Book eb = em.find(entities.Book.class, sel.getBookId());
-            if (eb != null) {
-                eb.setStatus("Available");
-                em.merge(eb);
-            }
+            info("Success", "Book marked as returned.");
+        }, ex -> warn("DB Error", ex.getMessage()));
+    }
 
-            tx.commit();
+    // كل الصفوف المفتوحة المختارة بـ transaction وحدة (UPDATE جماعي للإعارات وللكتب)
+    private void returnSelected(List<Borrowing> open) {
+        LocalDate today = LocalDate.now();
+        List<Integer> ids = new ArrayList<>(open.size());
+        for (Borrowing b : open) ids.add(b.getId());
 
-            sel.setReturnDate(today);
+        commands.once("return", () -> new HashSet<>(borrowingService.returnMany(ids, today)), freed -> {
+            for (Borrowing b : open) {
+                b.setReturnDate(today);
+                markAvailable(b);
+            }
             historyTable.refresh();
 
-            allBooks.stream().filter(x -> x.getId() == sel.getBookId()).findFirst()
-                    .ifPresent(x -> x.setStatus("Available"));
+            if (freed.size() < open.size()) {
+                // في منها انرجع من مكان تاني → نجيب التواريخ الصحيحة من القاعدة
+                reloadLists();
+                info("Partially Returned", freed.size() + " of " + open.size()
+                        + " books returned; the rest were already returned elsewhere.");
+            } else {
+                info("Success", open.size() + " books marked as returned.");
+            }
+        }, ex -> warn("DB Error", ex.getMessage()));
+    }
 
-            boolean exists = availableBooks.stream().anyMatch(x -> x.getId() == sel.getBookId());
-            if (!exists) {
-                String title = bookTitle.getOrDefault(sel.getBookId(), "Book #" + sel.getBookId());
-                availableBooks.add(new Book(sel.getBookId(), title, "", "Available"));
+    private void markAvailable(Borrowing br) {
+        allBooks.stream().filter(x -> x.getId() == br.getBookId()).findFirst()
+                .ifPresent(x -> x.setStatus("Available"));
+
+        boolean exists = availableBooks.stream().anyMatch(x -> x.getId() == br.getBookId());
+        if (!exists) {
+            String title = br.getBookTitle() != null ? br.getBookTitle() : "Book #" + br.getBookId();
+            availableBooks.add(new Book(br.getBookId(), title, "", "Available"));
+        }
+    }
+
+    // ====== السلة ======
+    @FXML
+    private void handleAddToBasket(ActionEvent e) {
+        Book b = bookCombo.getValue();
+        if (b == null) {
+            warn("No Book", "Select a book to add to the basket.");
+            return;
+        }
+        if (basket.stream().anyMatch(x -> x.getId() == b.getId())) {
+            warn("Already in Basket", "This book is already in the basket.");
+            return;
+        }
+        int max = borrowingService.getMaxActive();
+        if (max > 0 && basket.size() >= max) {
+            warn("Policy Violation", "A member can't borrow more than " + max + " books.");
+            return;
+        }
+        basket.add(b);
+        bookCombo.getSelectionModel().clearSelection();
+    }
+
+    @FXML
+    private void handleRemoveFromBasket(ActionEvent e) {
+        Book b = basketList.getSelectionModel().getSelectedItem();
+        if (b != null) {
+            basket.remove(b);
+        }
+    }
+
+    // الحد والمتأخرات بينفحصوا مرة وحدة للسلة كلها، والكتب بتنحجز كلها أو ولا واحد
+    @FXML
+    private void handleCheckoutBasket(ActionEvent e) {
+        Member m = memberCombo.getValue();
+        LocalDate d = borrowDate.getValue();
+
+        if (basket.isEmpty()) {
+            warn("Empty Basket", "Add one or more books to the basket first.");
+            return;
+        }
+        if (m == null || d == null) {
+            warn("Missing Fields", "Select member and date.");
+            return;
+        }
+        if (d.isAfter(LocalDate.now())) {
+            warn("Invalid Date", "Future dates are not allowed.");
+            return;
+        }
+
+        Map<Integer, Book> byId = new LinkedHashMap<>();
+        for (Book b : basket) byId.put(b.getId(), b);
+
+        commands.once("checkout", () -> borrowingService.borrowMany(m.getId(), byId.keySet(), d), r -> {
+            switch (r.status()) {
+                case MEMBER_MISSING:
+                    warn("Member Missing", "Selected member no longer exists.");
+                    reloadLists();
+                    return;
+                case BOOK_UNAVAILABLE:
+                    StringBuilder titles = new StringBuilder();
+                    for (Integer id : r.unavailable()) {
+                        Book b = byId.get(id);
+                        titles.append("\n• ").append(b != null ? b.getTitle() : "Book #" + id);
+                        basket.removeIf(x -> x.getId() == id);
+                    }
+                    warn("Unavailable", "These books were borrowed meanwhile and were removed from the basket:"
+                            + titles + "\nNothing was borrowed.");
+                    reloadLists();
+                    return;
+                case LIMIT_REACHED:
+                    warn("Policy Violation",
+                            "Member already has " + r.activeCount() + " active borrowings; " + basket.size()
+                            + " more would exceed the limit of " + borrowingService.getMaxActive() + ".");
+                    return;
+                case HAS_OVERDUE:
+                    warn("Member has overdue items", "Member has overdue items.");
+                    return;
+                default:
+                    break;
             }
 
-            info("Success", "Book marked as returned.");
-        } catch (Exception ex) {
-            if (tx.isActive()) {
-                tx.rollback();
+            List<Borrowing> rows = new ArrayList<>(r.borrowings().size());
+            for (entities.Borrowing br : r.borrowings()) {
+                Book b = byId.get(br.getBook().getId());
+                rows.add(new Borrowing(br.getId(), b.getId(), b.getTitle(), m.getId(), m.getName(), d, null));
             }
-            warn("DB Error", ex.getMessage());
-        } finally {
-            em.close();
-        }
+            for (Book x : allBooks) {
+                if (byId.containsKey(x.getId())) x.setStatus("Borrowed");
+            }
+            availableBooks.removeIf(x -> byId.containsKey(x.getId()));
+            history.addAll(0, rows);
+            basket.clear();
+            info("Success", rows.size() + " borrowings recorded.");
+
+            memberCombo.getSelectionModel().clearSelection();
+            borrowDate.setValue(LocalDate.now());
+        }, ex -> warn("DB Error", ex.getMessage()));
     }
 
     @FXML
     private void handleBackToDashboard(ActionEvent e) {
+        for (String key : new String[] { "books", "members", "search" }) {
+            commands.cancel(key);
+        }
+        historyPager.cancel();
         try {
             Parent root = FXMLLoader.load(getClass().getResource("/smartlibrarymanager_project/fxml_files/dashboard.fxml"));
             Stage st = (Stage) ((Node) e.getSource()).getScene().getWindow();
@@ -311,59 +394,48 @@ public class BorrowingController implements Initializable {
     }
 
     // ====== تحميل البيانات ======
+    // تحميل جديد بيلغي اللي قبله (بعد إعارة فاشلة مثلاً)، والقوائم بتتبدل مرة وحدة لما توصل
     private void loadBooks() {
-        allBooks.clear();
-        availableBooks.clear();
-        bookTitle.clear();
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            var list = em.createQuery("SELECT b FROM Book b ORDER BY b.id", entities.Book.class).getResultList();
-            for (entities.Book eb : list) {
-                Book bk = new Book(eb.getId(), eb.getTitle(), eb.getAuthor(), eb.getStatus());
-                allBooks.add(bk);
-                bookTitle.put(eb.getId(), eb.getTitle());
-                if ("available".equalsIgnoreCase(eb.getStatus())) {
-                    availableBooks.add(bk);
-                }
+        commands.latest("books", () -> {
+            List<Book> out = new ArrayList<>();
+            for (entities.Book eb : bookRepo.findAll()) {
+                out.add(new Book(eb.getId(), eb.getTitle(), eb.getAuthor(), eb.getStatus()));
             }
-        } catch (Exception ignored) {
-        } finally {
-            em.close();
-        }
+            return out;
+        }, books -> {
+            allBooks.clear();
+            allBooks.addAll(books);
+            availableBooks.setAll(books.stream().filter(bk -> "available".equalsIgnoreCase(bk.getStatus())).toList());
+        }, ignored -> {
+        });
     }
 
     private void loadMembers() {
-        members.clear();
-        memberName.clear();
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            var list = em.createQuery("SELECT m FROM Member m ORDER BY m.id", entities.Member.class).getResultList();
-            for (entities.Member mm : list) {
-                members.add(new Member(mm.getId(), mm.getName(), mm.getContact()));
-                memberName.put(mm.getId(), mm.getName());
+        commands.latest("members", () -> {
+            List<Member> out = new ArrayList<>();
+            for (entities.Member mm : memberRepo.findAll()) {
+                out.add(new Member(mm.getId(), mm.getName(), mm.getContact()));
             }
-        } catch (Exception ignored) {
-        } finally {
-            em.close();
-        }
+            return out;
+        }, members::setAll, ignored -> {
+        });
     }
 
     private void loadHistory() {
-        history.clear();
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            var list = em.createQuery("SELECT br FROM Borrowing br ORDER BY br.id DESC", entities.Borrowing.class)
-                    .getResultList();
-            for (entities.Borrowing br : list) {
-                int bId = br.getBook() == null ? -1 : br.getBook().getId();
-                int mId = br.getMember() == null ? -1 : br.getMember().getId();
-                history.add(new Borrowing(br.getId(), bId, mId, br.getBorrowDate(), br.getReturnDate()));
-            }
-            historyTable.refresh();
-        } catch (Exception ignored) {
-        } finally {
-            em.close();
-        }
+        commands.cancel("search");
+        historyPager.reset(historyFetcher("id", false));
+    }
+
+    // صفحات keyset على (sortKey, id)
+    private PagedTable.PageFetcher<Borrowing> historyFetcher(String field, boolean asc) {
+        return (last, limit) -> (last == null)
+                ? borrowingRepo.findHistoryPage(null, null, field, asc, limit)
+                : borrowingRepo.findHistoryPage(last.getId(),
+                        "borrowDate".equals(field) ? last.getBorrowDate() : last.getId(), field, asc, limit);
+    }
+
+    private static String orUnknown(String name, int id) {
+        return name != null ? name : "Unknown (" + id + ")";
     }
 
     private void reloadLists() {
@@ -406,6 +478,17 @@ public class BorrowingController implements Initializable {
             }
         };
         memberCombo.setButtonCell(memBtnCell);
+
+        // Basket
+        if (basketList != null) {
+            basketList.setCellFactory(lv -> new ListCell<>() {
+                @Override
+                protected void updateItem(Book item, boolean empty) {
+                    super.updateItem(item, empty);
+                    setText(empty || item == null ? null : item.getId() + " — " + item.getTitle());
+                }
+            });
+        }
     }
 
     // ====== مساعدات عامة ======
@@ -436,67 +519,31 @@ public class BorrowingController implements Initializable {
             return;
         }
 
-        ObservableList<Borrowing> results = history.stream().filter(bor -> {
-            boolean okText = true, okDate = true;
-
-            if (!q.isEmpty()) {
-                if (q.matches("\\d+")) {
-                    okText = String.valueOf(bor.getMemberId()).equals(q);
-                } else {
-                    String title = bookTitle.getOrDefault(bor.getBookId(), "");
-                    okText = title != null && title.toLowerCase().contains(q.toLowerCase());
-                }
-            }
-            if (dt != null) {
-                okDate = dt.equals(bor.getBorrowDate());
+        // البحث على القاعدة (الجدول محمّل على صفحات)؛ بحث جديد بيلغي اللي قبله
+        historyPager.cancel();
+        commands.latest("search", () -> borrowingRepo.searchHistory(q, dt, SEARCH_LIMIT), list -> {
+            if (list.isEmpty()) {
+                warn("No Results", "No borrowing records found matching your search criteria.");
+                return;
             }
-            return okText && okDate;
-        }).collect(Collectors.toCollection(FXCollections::observableArrayList));
-
-        if (results.isEmpty()) {
-            warn("No Results", "No borrowing records found matching your search criteria.");
-            return;
-        }
-        historyTable.setItems(results);
-        historyTable.refresh();
-        info("Search Results", "Found " + results.size() + " matching borrowing record(s).");
+            ObservableList<Borrowing> results = FXCollections.observableArrayList(list);
+            historyTable.setItems(results);
+            historyTable.refresh();
+            info("Search Results", "Found " + results.size() + " matching borrowing record(s).");
+        }, ex -> warn("DB Error", ex.getMessage()));
     }
 
+    // كبسة ترتيب تانية قبل ما توصل الأولى بتلغيها (PagedTable)
     private void sortBorrowingRecords(String key) {
-        ObservableList<Borrowing> list = historyTable.getItems();
+        commands.cancel("search");
         switch (key) {
             case "Sort by Borrowing Date (Newest First)":
-                list.sort((a, b) -> {
-                    LocalDate da = a.getBorrowDate(), db = b.getBorrowDate();
-                    if (da == null && db == null) {
-                        return 0;
-                    }
-                    if (da == null) {
-                        return 1;
-                    }
-                    if (db == null) {
-                        return -1;
-                    }
-                    return db.compareTo(da);
-                });
+                historyPager.reset(historyFetcher("borrowDate", false));
                 break;
             case "Sort by Borrowing Date (Oldest First)":
-                list.sort((a, b) -> {
-                    LocalDate da = a.getBorrowDate(), db = b.getBorrowDate();
-                    if (da == null && db == null) {
-                        return 0;
-                    }
-                    if (da == null) {
-                        return 1;
-                    }
-                    if (db == null) {
-                        return -1;
-                    }
-                    return da.compareTo(db);
-                });
+                historyPager.reset(historyFetcher("borrowDate", true));
                 break;
         }
-        historyTable.refresh();
     }
 
     @FXML
@@ -504,8 +551,7 @@ public class BorrowingController implements Initializable {
         textSearchFeild.clear();
         searchByDatePicker.setValue(null);
         sortComboBox.setValue(null);
-        historyTable.setItems(history);
-        historyTable.refresh();
+        loadHistory();
         info("Search Reset", "Showing all borrowing records.");
     }
 
@@ -526,9 +572,15 @@ public class BorrowingController implements Initializable {
         if (btnCalculateFines != null) {
             btnCalculateFines.setDisable(running);
         }
+        if (btnExportHistory != null) {
+            btnExportHistory.setDisable(running);
+        }
+        if (btnReconcileCounters != null) {
+            btnReconcileCounters.setDisable(running);
+        }
     }
 
-    private <T> void runBorrowTask(Task<T> task, Consumer<T> onSuccess) {
+    private <T> void runBorrowTask(Lane lane, Task<T> task, Consumer<T> onSuccess) {
         // قبل البدء
         lockUI(true);
         if (statusBorrow != null) {
@@ -566,7 +618,15 @@ public class BorrowingController implements Initializable {
             currentBorrowTask = null;
         });
 
-        new Thread(task, "BorrowingTask").start();
+        try {
+            TaskExecutor.shared().execute(lane, task);
+        } catch (java.util.concurrent.RejectedExecutionException ex) {
+            lockUI(false);
+            currentBorrowTask = null;
+            if (statusBorrow != null) {
+                statusBorrow.setText("Busy, try again: " + ex.getMessage());
+            }
+        }
     }
 
     @FXML
@@ -579,15 +639,12 @@ public class BorrowingController implements Initializable {
     // ====== الهاندلرز الخاصة بالمهام ======
     @FXML
     private void handleRefreshHistory() {
-        tasks.LoadHistoryTask task = new tasks.LoadHistoryTask();
-        runBorrowTask(task, data -> {
-            history.clear();
-            for (entities.Borrowing br : data) {
-                int bId = br.getBook() == null ? -1 : br.getBook().getId();
-                int mId = br.getMember() == null ? -1 : br.getMember().getId();
-                history.add(new Borrowing(br.getId(), bId, mId, br.getBorrowDate(), br.getReturnDate()));
-            }
-            historyTable.setItems(history);
+        tasks.LoadHistoryTask task = new tasks.LoadHistoryTask(historyPager.getPageSize());
+        runBorrowTask(Lane.INTERACTIVE, task, data -> {
+            commands.cancel("search");
+            // LoadHistoryTask بيجيب الأحدث بالـ id، فالسكرول لازم يكمل بنفس الترتيب مش بترتيب الـ combo
+            sortComboBox.setValue(null);
+            historyPager.setFirstPage(historyFetcher("id", false), data);
             historyTable.refresh();
             if (outputBorrow != null) {
                 outputBorrow.appendText("History refreshed. Records: " + data.size() + "\n");
@@ -600,28 +657,85 @@ public class BorrowingController implements Initializable {
         if (outputBorrow != null) {
             outputBorrow.clear();
         }
-        tasks.GenerateRemindersTask task = new tasks.GenerateRemindersTask();
-        runBorrowTask(task, text -> {
+        tasks.FxTextSink sink = outputSink();
+        tasks.GenerateRemindersTask task = new tasks.GenerateRemindersTask(sink);
+        runBorrowTask(Lane.BATCH, task, text -> {
             if (text == null || text.isBlank()) {
                 text = "No upcoming due items.\n";
             }
+            appendSummary(sink, text);
+        });
+    }
+
+    @FXML
+    private void handleCalculateFines() {
+        if (outputBorrow != null) {
+            outputBorrow.clear();
+        }
+        tasks.FxTextSink sink = outputSink();
+        tasks.CalculateFinesTask task = new tasks.CalculateFinesTask(sink);
+        runBorrowTask(Lane.BATCH, task, text -> appendSummary(sink, text));
+    }
+
+    // المهام بتكتب صفحة صفحة على outputBorrow (دفعة وحدة لكل pulse، بحد أقصى للحجم)
+    private tasks.FxTextSink outputSink() {
+        return new tasks.FxTextSink(text -> {
             if (outputBorrow != null) {
                 outputBorrow.appendText(text);
             }
         });
     }
 
+    private void appendSummary(tasks.FxTextSink sink, String text) {
+        if (outputBorrow == null) {
+            return;
+        }
+        if (sink.getDroppedLines() > 0) {
+            outputBorrow.appendText("... " + sink.getDroppedLines() + " more lines not shown\n");
+        }
+        outputBorrow.appendText(text);
+    }
+
     @FXML
-    private void handleCalculateFines() {
+    private void handleReconcileCounters() {
         if (outputBorrow != null) {
             outputBorrow.clear();
         }
-        tasks.CalculateFinesTask task = new tasks.CalculateFinesTask();
-        runBorrowTask(task, text -> {
+        tasks.ReconcileLoanStatsTask task = new tasks.ReconcileLoanStatsTask();
+        if (statusBorrow != null) {
+            task.messageProperty().addListener((obs, o, msg) -> statusBorrow.setText(msg));
+        }
+        runBorrowTask(Lane.BATCH, task, text -> {
             if (outputBorrow != null) {
                 outputBorrow.appendText(text);
             }
         });
     }
 
+    @FXML
+    private void handleExportHistory() {
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Export Borrowing History");
+        fc.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV", "*.csv"),
+                new FileChooser.ExtensionFilter("CSV (gzip)", "*.csv.gz"),
+                new FileChooser.ExtensionFilter("JSON lines", "*.jsonl"),
+                new FileChooser.ExtensionFilter("JSON lines (gzip)", "*.jsonl.gz"));
+        fc.setInitialFileName("borrowings.csv");
+        File f = fc.showSaveDialog(historyTable.getScene().getWindow());
+        if (f == null) {
+            return;
+        }
+
+        tasks.ExportHistoryTask task = tasks.ExportHistoryTask.forFile(f.toPath());
+        if (statusBorrow != null) {
+            task.messageProperty().addListener((obs, o, msg) -> statusBorrow.setText(msg));
+        }
+        runBorrowTask(Lane.BATCH, task, count -> {
+            if (outputBorrow != null) {
+                outputBorrow.appendText("Exported " + count + " records to " + f.getName() + "\n");
+            }
+        });
+    }
+
 }
@@ -1,5 +1,6 @@
 package controllers;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -13,16 +14,29 @@ import javafx.scene.control.Button;
 
 import javax.persistence.EntityManager;
 
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+
+import services.DueDateIndex;
 import util.JpaUtil;
+import util.TaskExecutor;
+import entities.User;
 
 public class DashboardController {
 
     @FXML
     private Label welcomeLabel;
 
+    @FXML
+    private Label overdueLabel;
+
     @FXML
     private Button btnReports;
 
+    private final DueDateIndex dueIndex = DueDateIndex.shared();
+    private Runnable unsubscribe;
+    private final FxCommands commands = new FxCommands();
+
     private static final String BOOKS_FXML = "/smartlibrarymanager_project/fxml_files/BooksPage.fxml";
     private static final String MEMBERS_FXML = "/smartlibrarymanager_project/fxml_files/MembersPage.fxml";
     private static final String BORROW_FXML = "/smartlibrarymanager_project/fxml_files/BorrowingPage.fxml";
@@ -32,27 +46,55 @@ public class DashboardController {
     @FXML
     public void initialize() {
         String email = AppSession.userEmail;
-        String display = (email == null || email.isBlank())
-                ? "" : fetchFirstNameByEmail(email);
-
-        if (display == null || display.isBlank()) {
-            display = (AppSession.userName != null && !AppSession.userName.isBlank())
-                    ? AppSession.userName : (email == null ? "" : email);
-        }
+        String display = (AppSession.userName != null && !AppSession.userName.isBlank())
+                ? AppSession.userName : (email == null ? "" : email);
 
         if (welcomeLabel != null) {
             welcomeLabel.setText("Welcome, " + display + "!");
+            // الاسم من القاعدة بالخلفية، وبيحل محل اللي من الجلسة لما يوصل
+            if (email != null && !email.isBlank()) {
+                commands.latest("name", () -> fetchFirstNameByEmail(email), name -> {
+                    if (name != null && !name.isBlank()) {
+                        welcomeLabel.setText("Welcome, " + name + "!");
+                    }
+                }, ignored -> {
+                });
+            }
         }
+
+        if (overdueLabel != null) {
+            // الأحداث بتيجي على thread الساعة
+            unsubscribe = dueIndex.subscribe(became -> Platform.runLater(this::refreshOverdue));
+            if (dueIndex.isLoaded()) {
+                refreshOverdue();
+            } else {
+                overdueLabel.setText("Loading due dates...");
+                CompletableFuture.runAsync(dueIndex::ensureLoaded,
+                                TaskExecutor.shared().executor(TaskExecutor.Lane.INTERACTIVE))
+                        .whenComplete((v, ex) -> Platform.runLater(this::refreshOverdue));
+            }
+        }
+    }
+
+    // عدّ من الذاكرة، بدون query
+    private void refreshOverdue() {
+        if (!dueIndex.isLoaded()) {
+            overdueLabel.setText("");
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        overdueLabel.setText("Overdue: " + dueIndex.overdue(today).size()
+                + "  ·  Due in 48h: " + dueIndex.dueBetween(today, today.plusDays(2)).size());
     }
 
     private String fetchFirstNameByEmail(String email) {
         EntityManager em = JpaUtil.getEntityManager();
         try {
             var list = em.createQuery(
-                    "SELECT u.firstName FROM User u WHERE LOWER(u.email) = :e",
+                    "SELECT u.firstName FROM User u WHERE u.emailNormalized = :e",
                     String.class
             )
-                    .setParameter("e", email.toLowerCase())
+                    .setParameter("e", User.normalizeEmail(email))
                     .setMaxResults(1)
                     .getResultList();
 
@@ -92,6 +134,11 @@ public class DashboardController {
     }
 
     private void goTo(ActionEvent event, String fxml, String title) {
+        if (unsubscribe != null) {
+            unsubscribe.run();
+            unsubscribe = null;
+        }
+        commands.cancelAll();
         try {
             Parent root = FXMLLoader.load(getClass().getResource(fxml));
             Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
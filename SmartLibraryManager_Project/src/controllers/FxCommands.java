@@ -0,0 +1,103 @@
+package controllers;
+
+import javafx.application.Platform;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import util.TaskExecutor;
+import util.TaskExecutor.Lane;
+
+// شغل القاعدة تبع أزرار الشاشة: بيشتغل على TaskExecutor والنتيجة بترجع على FX thread.
+// كل أمر إله key (مثلاً "page" أو "save")، وبيتصرف حسب النوع لما ينطلب وفي واحد شغّال بنفس الـ key:
+//   latest: الجديد بيحل محل القديم (كبستين ترتيب ورا بعض): القديم بينلغى ونتيجته بتنرمى.
+//           على lane التحميلات (INTERACTIVE) اللي بيرمي الأقدم لو امتلى
+//   once:   الجديد بينتجاهل (دبل كليك على Borrow ما بيعمل إعارتين). للكتابة: على lane WRITE
+//           اللي ما بيرمي شي؛ لو امتلى onError بياخد RejectedExecutionException برسالة BUSY
+// الـ map والـ callbacks كلها على FX thread، فما في قفل. instance لكل controller
+public final class FxCommands {
+
+    public static final String BUSY = "The app is busy right now, please try again.";
+    private static final String DROPPED = "Too many requests were waiting; this one was dropped. Please try again.";
+
+    private final Map<String, Command<?>> inFlight = new HashMap<>();
+
+    // بيلغي أي أمر شغّال بنفس الـ key ويبعت هذا مكانه
+    public <T> void latest(String key, Callable<T> work, Consumer<? super T> onOk, Consumer<Throwable> onError) {
+        cancel(key);
+        submit(Lane.INTERACTIVE, new Command<>(key, work, onOk, onError));
+    }
+
+    // false لو في أمر بنفس الـ key لسا ما خلص (الطلب الجديد ما بينبعت)
+    public <T> boolean once(String key, Callable<T> work, Consumer<? super T> onOk, Consumer<Throwable> onError) {
+        if (inFlight.containsKey(key)) return false;
+        submit(Lane.WRITE, new Command<>(key, work, onOk, onError));
+        return true;
+    }
+
+    public boolean isRunning(String key) {
+        return inFlight.containsKey(key);
+    }
+
+    // النتيجة ما بتوصل. الاستعلام اللي بلّش على القاعدة بيكمل لآخره (ما منقطع JDBC بالنص)
+    public void cancel(String key) {
+        Command<?> c = inFlight.remove(key);
+        if (c != null) c.cancel(false);
+    }
+
+    // وقت ترك الشاشة
+    public void cancelAll() {
+        for (Command<?> c : inFlight.values()) c.cancel(false);
+        inFlight.clear();
+    }
+
+    private void submit(Lane lane, Command<?> c) {
+        inFlight.put(c.key, c);
+        try {
+            TaskExecutor.shared().execute(lane, c);
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(c.key, c);
+            c.onError.accept(new RejectedExecutionException(BUSY, ex));
+        }
+    }
+
+    // على FX thread بعد ما الأمر يخلص أو ينلغى
+    private <T> void complete(Command<T> c) {
+        // انلغى من هون أو إجا بعده أمر أحدث بنفس الـ key
+        if (!inFlight.remove(c.key, c)) return;
+        try {
+            c.onOk.accept(c.get());
+        } catch (ExecutionException ex) {
+            c.onError.accept(ex.getCause());
+        } catch (CancellationException ex) {
+            // تحميل انشال من queue التحميلات المليان (DISCARD_OLDEST) أو وقت shutdown؛ الكتابة ما بتوصل لهون
+            c.onError.accept(new CancellationException(DROPPED));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Command<T> extends FutureTask<T> {
+        final String key;
+        final Consumer<? super T> onOk;
+        final Consumer<Throwable> onError;
+
+        Command(String key, Callable<T> work, Consumer<? super T> onOk, Consumer<Throwable> onError) {
+            super(work);
+            this.key = key;
+            this.onOk = onOk;
+            this.onError = onError;
+        }
+
+        @Override
+        protected void done() {
+            Platform.runLater(() -> complete(this));
+        }
+    }
+}
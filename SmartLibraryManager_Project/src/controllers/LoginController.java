@@ -32,6 +32,8 @@ public class LoginController {
     private static final String SIGNUP_FXML = "/smartlibrarymanager_project/fxml_files/signup.fxml";
     private static final String DASHBOARD_FXML = "/smartlibrarymanager_project/fxml_files/dashboard.fxml";
 
+    private final FxCommands commands = new FxCommands();
+
     @FXML
     private void initialize() {
         if (LoginButton != null) {
@@ -52,19 +54,38 @@ public class LoginController {
             return;
         }
 
+        // الاستعلام بالخلفية؛ الزر مقفول لحد ما يرجع (Enter مرتين ما بيبعت طلبين)
+        Node source = (Node) event.getSource();
+        LoginButton.setDisable(true);
+        commands.once("login", () -> findUser(email), u -> {
+            LoginButton.setDisable(false);
+            signIn(source, u, pass);
+        }, e -> {
+            LoginButton.setDisable(false);
+            alert(Alert.AlertType.ERROR, "DB error", e.getMessage());
+        });
+    }
+
+    private User findUser(String email) {
         EntityManager em = JpaUtil.getEntityManager();
         try {
             var list = em.createQuery(
-                    "SELECT u FROM User u WHERE LOWER(u.email) = :email", User.class)
+                    "SELECT u FROM User u WHERE u.emailNormalized = :email", User.class)
                     .setParameter("email", email)
                     .getResultList();
+            return list.isEmpty() ? null : list.get(0);
+        } finally {
+            em.close();
+        }
+    }
 
-            if (list.isEmpty()) {
-                alert(Alert.AlertType.WARNING, "Not found", "This email doesn't exist.");
-                return;
-            }
+    private void signIn(Node source, User u, String pass) {
+        if (u == null) {
+            alert(Alert.AlertType.WARNING, "Not found", "This email doesn't exist.");
+            return;
+        }
 
-            User u = list.get(0);
+        try {
             String storedHash = u.getPasswordHash();
             String enteredHashMd5 = toMD5(pass);
 
@@ -81,15 +102,13 @@ public class LoginController {
             DashboardController dc = loader.getController();
             dc.setUser(AppSession.userName, AppSession.userEmail);
 
-            Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
+            Stage stage = (Stage) source.getScene().getWindow();
             stage.setScene(new Scene(root));
             stage.setTitle("Smart Library Manager - Dashboard");
             stage.centerOnScreen();
 
         } catch (Exception e) {
-            alert(Alert.AlertType.ERROR, "DB error", e.getMessage());
-        } finally {
-            em.close();
+            alert(Alert.AlertType.ERROR, "Navigation Error", e.getMessage());
         }
     }
 
@@ -17,11 +17,10 @@ import javafx.fxml.Initializable;
 
 import java.net.URL;
 import java.util.ResourceBundle;
-import java.util.stream.Collectors;
 
+import Repositories.MemberRepo;
 import util.JpaUtil;
 import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
 
 public class MembersController implements Initializable {
 
@@ -45,6 +44,12 @@ public class MembersController implements Initializable {
 
     private final ObservableList<Member> data = FXCollections.observableArrayList();
 
+    private final MemberRepo memberRepo = new MemberRepo();
+    private PagedTable<Member> pager;
+
+    // القراءة والكتابة على القاعدة بالخلفية (search/save)، الـ pager إله تبعه
+    private final FxCommands commands = new FxCommands();
+
     @FXML
     private void handleAdd() {
         Member sel = table.getSelectionModel().getSelectedItem();
@@ -58,19 +63,19 @@ public class MembersController implements Initializable {
             return;
         }
 
-        boolean dup = data.stream().anyMatch(m
-                -> m.getContact().equalsIgnoreCase(contact)
-                || (m.getName().equalsIgnoreCase(name) && m.getContact().equalsIgnoreCase(contact)));
-        if (dup) {
-            warn("Duplicate", "Member already exists.");
-            return;
-        }
-
-        data.add(new Member(nextId(), name, contact));
-        save();           
-        clear();
-        table.getSelectionModel().selectLast();
-        table.scrollTo(data.size() - 1);
+        // التحقق من التكرار على القاعدة (الجدول محمّل على صفحات) والإضافة بنفس الأمر
+        commands.once("save", () -> {
+            if (memberRepo.existsContact(contact, null)) return false;
+            memberRepo.add(new Member(null, name, contact));
+            return true;
+        }, added -> {
+            if (!added) {
+                warn("Duplicate", "Member already exists.");
+                return;
+            }
+            clear();
+            load();
+        }, ex -> warn("DB Save Error", ex.getMessage()));
     }
 
     @FXML
@@ -86,18 +91,38 @@ public class MembersController implements Initializable {
             return;
         }
 
-        boolean dup = data.stream().anyMatch(m
-                -> m != sel && (m.getContact().equalsIgnoreCase(contact)
-                || (m.getName().equalsIgnoreCase(name) && m.getContact().equalsIgnoreCase(contact))));
-        if (dup) {
-            warn("Duplicate", "Another member has same data.");
+        if (commands.isRunning("save")) {
             return;
         }
 
+        // الصف بيتعدّل هون (FX thread) مش بالخلفية، وبيرجع زي ما كان لو البيانات مكررة
+        String oldName = sel.getName(), oldContact = sel.getContact();
         sel.setName(name);
         sel.setContact(contact);
-        table.refresh();
-        save();
+        commands.once("save", () -> {
+            if (memberRepo.existsContact(contact, sel.getId())) return null;
+            // النسخة المحفوظة فيها الـ version الجديد؛ لو ضلّت القديمة بالجدول التعديل الجاي بيتعارض
+            return memberRepo.update(sel);
+        }, saved -> {
+            if (saved == null) {
+                sel.setName(oldName);
+                sel.setContact(oldContact);
+                warn("Duplicate", "Another member has same data.");
+            } else {
+                int i = table.getItems().indexOf(sel);
+                if (i >= 0) table.getItems().set(i, saved);
+            }
+            table.refresh();
+        }, ex -> {
+            if (util.JpaUtil.isOptimisticLockFailure(ex)) {
+                warn("Changed Elsewhere", "This member was changed by another user. The list has been reloaded, please edit again.");
+                clear();
+                load();
+                return;
+            }
+            warn("DB Save Error", ex.getMessage());
+            table.refresh();
+        });
     }
 
     @FXML
@@ -108,20 +133,32 @@ public class MembersController implements Initializable {
             return;
         }
 
-        if (memberHasActiveBorrowings(sel.getId())) {
-            warn("Cannot Delete", "This member currently has borrowed books.");
-            return;
-        }
+        // الفحص بالخلفية، والتأكيد على الشاشة، وبعدين الحذف بالخلفية
+        int id = sel.getId();
+        commands.once("save", () -> memberHasActiveBorrowings(id), active -> {
+            if (active) {
+                warn("Cannot Delete", "This member currently has borrowed books.");
+                return;
+            }
 
-        Alert a = new Alert(Alert.AlertType.CONFIRMATION, "Delete selected member?",
-                ButtonType.OK, ButtonType.CANCEL);
-        if (a.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
-            return;
-        }
+            Alert a = new Alert(Alert.AlertType.CONFIRMATION, "Delete selected member?",
+                    ButtonType.OK, ButtonType.CANCEL);
+            if (a.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+                return;
+            }
 
-        data.remove(sel);
-        save();
-        clear();
+            commands.once("save", () -> {
+                memberRepo.deleteById(id);
+                return null;
+            }, done -> {
+                data.remove(sel);
+                table.getItems().remove(sel);
+                clear();
+            }, ex -> {
+                warn("DB Save Error", ex.getMessage());
+                clear();
+            });
+        }, ex -> warn("DB Load Error", ex.getMessage()));
     }
 
     @FXML
@@ -131,6 +168,8 @@ public class MembersController implements Initializable {
 
     @FXML
     private void handleBackToDashboard(ActionEvent e) {
+        commands.cancel("search");
+        pager.cancel();
         try {
             Parent root = FXMLLoader.load(getClass().getResource("/smartlibrarymanager_project/fxml_files/dashboard.fxml"));
             Stage stage = (Stage) ((Node) e.getSource()).getScene().getWindow();
@@ -150,75 +189,41 @@ public class MembersController implements Initializable {
             return;
         }
 
-        ObservableList<Member> searchResults = data.stream()
-                .filter(m -> m.getName().toLowerCase().contains(searchText.toLowerCase()))
-                .collect(Collectors.toCollection(FXCollections::observableArrayList));
-        if (searchResults.isEmpty()) {
-            warn("No Results", "No members found matching your search criteria.");
-            return;
-        }
-
-        table.setItems(searchResults);
-        table.refresh();
-        info("Search Results", "Found " + searchResults.size() + " matching member(s).");
+        // بحث جديد بيلغي اللي قبله، وصفحة جاية من الترتيب ما عاد إلها لزوم
+        pager.cancel();
+        commands.latest("search", () -> memberRepo.searchByName(searchText), list -> {
+            if (list.isEmpty()) {
+                warn("No Results", "No members found matching your search criteria.");
+                return;
+            }
+            ObservableList<Member> searchResults = FXCollections.observableArrayList(list);
+            table.setItems(searchResults);
+            table.refresh();
+            info("Search Results", "Found " + searchResults.size() + " matching member(s).");
+        }, ex -> warn("DB Load Error", ex.getMessage()));
     }
 
+    // كبسة ترتيب تانية قبل ما توصل الأولى بتلغيها (PagedTable)
     private void sortMembers(String sortStrategy) {
-        ObservableList<Member> currentItems = table.getItems();
+        commands.cancel("search");
         switch (sortStrategy) {
-            case "Sort by Name (A-Z)" ->
-                currentItems.sort((m1, m2) -> m1.getName().compareToIgnoreCase(m2.getName()));
-            case "Sort by Name (Z-A)" ->
-                currentItems.sort((m1, m2) -> m2.getName().compareToIgnoreCase(m1.getName()));
+            case "Sort by Name (A-Z)" -> pager.reset(fetcher("name", true));
+            case "Sort by Name (Z-A)" -> pager.reset(fetcher("name", false));
         }
-        table.refresh();
     }
 
-    private void load() {
-        data.clear();
-        EntityManager em = JpaUtil.getEntityManager();
-        try {
-            data.addAll(
-                    em.createQuery("SELECT m FROM Member m ORDER BY m.id", Member.class)
-                            .getResultList()
-            );
-        } catch (Exception ex) {
-            warn("DB Load Error", ex.getMessage());
-        } finally {
-            em.close();
-        }
-        table.setItems(data);
+    private PagedTable.PageFetcher<Member> fetcher(String field, boolean asc) {
+        return (last, limit) -> last == null
+                ? memberRepo.findPageAfter(null, null, field, asc, limit)
+                : memberRepo.findPageAfter(last.getId(), "name".equals(field) ? last.getName() : last.getId(), field, asc, limit);
     }
 
-
-    private void save() {
-        EntityManager em = JpaUtil.getEntityManager();
-        EntityTransaction tx = em.getTransaction();
-        try {
-            tx.begin();
-
-            for (Member m : data) {
-                if (m.getId() == null) {
-                    em.persist(m);   // INSERT
-                    em.flush();      
-                } else {
-                    em.merge(m);     // UPDATE
-                }
-            }
-
-            tx.commit();
-        } catch (Exception ex) {
-            if (tx.isActive()) {
-                tx.rollback();
-            }
-            warn("DB Save Error", ex.getMessage());
-        } finally {
-            em.close();
-        }
-
-        load();
+    private void load() {
+        commands.cancel("search");
+        pager.reset(fetcher("id", true));
     }
 
+    // بينادى من جوّا أمر بالخلفية
     private boolean memberHasActiveBorrowings(int memberId) {
         EntityManager em = JpaUtil.getEntityManager();
         try {
@@ -235,25 +240,6 @@ public class MembersController implements Initializable {
         }
     }
 
-  
-    private int nextId() {
-        int maxInList = data.stream().mapToInt(m -> m.getId() == null ? 0 : m.getId()).max().orElse(0);
-
-        EntityManager em = JpaUtil.getEntityManager();
-        int maxInDb = 0;
-        try {
-            Integer mx = em.createQuery("SELECT COALESCE(MAX(m.id), 0) FROM Member m", Integer.class)
-                    .getSingleResult();
-            if (mx != null) {
-                maxInDb = mx;
-            }
-        } catch (Exception ignored) {
-        } finally {
-            em.close();
-        }
-        return Math.max(maxInList, maxInDb) + 1;
-    }
-
     private void clear() {
         nameField.clear();
         contactField.clear();
@@ -310,8 +296,7 @@ public class MembersController implements Initializable {
     private void handleResetBtn(ActionEvent event) {
         textSearchFeild.clear();
         sortComboBox.setValue(null);
-        table.setItems(data);
-        table.refresh();
+        load();
         info("Search Reset", "Showing all members.");
     }
 
@@ -321,6 +306,8 @@ public class MembersController implements Initializable {
         nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
         contactCol.setCellValueFactory(new PropertyValueFactory<>("contact"));
         table.setItems(data);
+        pager = new PagedTable<>(table, data, PagedTable.DEFAULT_PAGE_SIZE, fetcher("id", true));
+        pager.setOnError(ex -> warn("DB Load Error", ex.getMessage()));
 
         table.getSelectionModel().selectedItemProperty().addListener((obs, o, m) -> {
             if (m == null) {
@@ -0,0 +1,116 @@
+package controllers;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+// تحميل TableView على صفحات (keyset) أثناء السكرول:
+// لما يظهر صف قريب من آخر القائمة بنجيب الصفحة اللي بعدها.
+// الـ fetch بيشتغل بالخلفية (FxCommands بالـ key "page"): reset/reload بيلغي أي صفحة لسا جاية
+// (ترتيب جديد ورا ترتيب)، وصفحة السكرول ما بتنطلب مرتين
+public final class PagedTable<T> {
+
+    // تجيب الصفحة اللي بعد آخر صف محمّل (last = null → أول صفحة)
+    public interface PageFetcher<T> {
+        List<T> fetch(T last, int limit);
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int PREFETCH_ROWS = 20;
+
+    private final TableView<T> table;
+    private final ObservableList<T> items;
+    private final int pageSize;
+    private PageFetcher<T> fetcher;
+    private boolean exhausted, scheduled;
+    private final FxCommands commands = new FxCommands();
+    private Consumer<Throwable> onError = ex -> {};
+
+    public PagedTable(TableView<T> table, ObservableList<T> items, int pageSize, PageFetcher<T> fetcher) {
+        this.table = table;
+        this.items = items;
+        this.pageSize = pageSize;
+        this.fetcher = fetcher;
+
+        table.setRowFactory(tv -> new TableRow<>() {
+            @Override
+            public void updateIndex(int i) {
+                super.updateIndex(i);
+                if (i >= 0 && i >= items.size() - PREFETCH_ROWS) requestNextPage();
+            }
+        });
+    }
+
+    // تبديل الاستعلام (ترتيب جديد مثلاً) والبدء من أول صفحة
+    public void reset(PageFetcher<T> newFetcher) {
+        this.fetcher = newFetcher;
+        reload();
+    }
+
+    public void reload() {
+        items.clear();
+        exhausted = false;
+        table.setItems(items);
+        PageFetcher<T> f = fetcher;
+        commands.latest("page", () -> f.fetch(null, pageSize), this::append, onError);
+        table.scrollTo(0);
+    }
+
+    // أول صفحة جاهزة (محمّلة بـ Task بالخلفية مثلاً)؛ الباقي بيكمل عادي مع السكرول.
+    // الـ fetcher الحالي لازم يكون بنفس ترتيب الصفحة، وإلا الـ keyset بيكمل من صف غلط
+    public void setFirstPage(List<T> page) {
+        commands.cancel("page");
+        items.setAll(page);
+        exhausted = page.size() < pageSize;
+        table.setItems(items);
+    }
+
+    // أول صفحة جاهزة مع الـ fetcher اللي بيكمّلها (نفس الترتيب)
+    public void setFirstPage(PageFetcher<T> newFetcher, List<T> page) {
+        this.fetcher = newFetcher;
+        setFirstPage(page);
+    }
+
+    public int getPageSize() { return pageSize; }
+
+    public boolean isExhausted() { return exhausted; }
+
+    public boolean isLoading() { return commands.isRunning("page"); }
+
+    // فشل تحميل صفحة (بينادى على FX thread)
+    public void setOnError(Consumer<Throwable> onError) {
+        this.onError = onError;
+    }
+
+    // ترك الشاشة: الصفحة الجاية ما عاد إلها لزوم
+    public void cancel() {
+        commands.cancel("page");
+    }
+
+    // ما بنعدّل القائمة أثناء الـ layout، فبنأجّل التحميل لبعده
+    private void requestNextPage() {
+        if (scheduled || isLoading() || exhausted || table.getItems() != items) return;
+        scheduled = true;
+        Platform.runLater(() -> {
+            scheduled = false;
+            loadNextPage();
+        });
+    }
+
+    // صفحة لسا جاية (من reset أو من السكرول) → ما بنطلب مرة تانية
+    public void loadNextPage() {
+        if (exhausted || isLoading()) return;
+        T last = items.isEmpty() ? null : items.get(items.size() - 1);
+        PageFetcher<T> f = fetcher;
+        commands.latest("page", () -> f.fetch(last, pageSize), this::append, onError);
+    }
+
+    private void append(List<T> page) {
+        items.addAll(page);
+        exhausted = page.size() < pageSize;
+    }
+}
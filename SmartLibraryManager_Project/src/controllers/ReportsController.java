@@ -1,14 +1,17 @@
 package controllers;
 
-import entities.Book;
+import Repositories.BorrowingRepo;
+import Repositories.MemberRepo;
 import entities.Borrowing;
+import entities.FineLedger;
 import entities.Member;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
-import util.JpaUtil;
+import services.FineService;
+import tasks.ProgressTask;
+import util.TaskExecutor;
 
-import javax.persistence.EntityManager;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -25,9 +28,9 @@ public class ReportsController {
     @FXML private TextArea taOutput;
 
     private Task<String> currentTask;
+    private final BorrowingRepo borrowingRepo = new BorrowingRepo();
+    private final FxCommands commands = new FxCommands();
 
-    private static final int LOAN_GRACE_DAYS = 14;        
-    private static final double DAILY_FINE   = 1.0;       //هان حطينا غرامة دولار لكل يوم تأخير
     private static final DateTimeFormatter DF = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     @FXML
@@ -35,18 +38,9 @@ public class ReportsController {
         // أنواع التقارير
         cbType.getItems().setAll("Overdue Books", "Borrowing Stats", "Member Activity");
 
-        // تعبئة الأعضاء 
-        EntityManager em = null;
-        try {
-            em = JpaUtil.getEntityManager();
-            java.util.List<Member> members = em.createQuery(
-                    "SELECT m FROM Member m ORDER BY m.id", Member.class
-            ).getResultList();
-            cbMember.getItems().setAll(members);
-        } catch (Exception ignored) {
-        } finally {
-            if (em != null) try { em.close(); } catch (Exception ignore) {}
-        }
+        // تعبئة الأعضاء بالخلفية
+        commands.latest("members", () -> new MemberRepo().findAll(), cbMember.getItems()::setAll, ignored -> {
+        });
 
         // عرض الاي دي للميمبر
         cbMember.setButtonCell(new MemberCell());
@@ -123,8 +117,14 @@ public class ReportsController {
             showAlert(Alert.AlertType.ERROR, "Error", "Report failed: " + (ex == null ? "" : ex.getMessage()));
         });
 
-        // Multithreading
-        new Thread(currentTask, "reports-task").start();
+        // Multithreading (executor مشترك، lane التحميلات)
+        try {
+            TaskExecutor.shared().execute(TaskExecutor.Lane.INTERACTIVE, currentTask);
+        } catch (java.util.concurrent.RejectedExecutionException ex) {
+            unbindUI();
+            lblStatus.setText("Busy");
+            showAlert(Alert.AlertType.WARNING, "Busy", "Report couldn't start: " + ex.getMessage());
+        }
     }
 
     private void onCancel() {
@@ -147,210 +147,113 @@ public class ReportsController {
 
     // 1) Overdue Books
     private Task<String> taskOverdue(LocalDate from, LocalDate to, String ft) {
-        return new Task<>() {
+        return new ProgressTask<>() {
             @Override protected String call() {
-                updateMessage("Loading overdue...");
-                EntityManager em = JpaUtil.getEntityManager();
-                try {
-             
-                    java.util.List<Borrowing> active = em.createQuery(
-                            "SELECT b FROM Borrowing b WHERE b.returnDate IS NULL",
-                            Borrowing.class
-                    ).getResultList();
-
-                    LocalDate today = LocalDate.now();
-                    java.util.List<Borrowing> list = new ArrayList<>();
-
-     
-                    for (Borrowing b : active) {
-                        if (b == null || b.getBorrowDate() == null) continue;
-
-                        // متأخرة؟
-                        LocalDate due = b.getBorrowDate().plusDays(LOAN_GRACE_DAYS);
-                        if (!due.isBefore(today)) continue;
-
-                        // ضمن المدى؟
-                        if (from != null && b.getBorrowDate().isBefore(from)) continue;
-                        if (to   != null && b.getBorrowDate().isAfter(to)) continue;
-
-                        //فلترة على العنوان والكاتب
-                        if (ft != null && !ft.isBlank()) {
-                            Book bk = b.getBook();
-                            String author = (bk != null && bk.getAuthor() != null) ? bk.getAuthor().toLowerCase() : "";
-                            String title  = (bk != null && bk.getTitle()  != null) ? bk.getTitle().toLowerCase()  : "";
-                            if (!(author.contains(ft) || title.contains(ft))) continue;
-                        }
-                        list.add(b);
-                    }
-
-                    StringBuilder out = new StringBuilder();
-                    int n = list.size();
-                    for (int i = 0; i < n; i++) {
-                        if (isCancelled()) return "";
-                        Borrowing br = list.get(i);
-
-                        LocalDate due = br.getBorrowDate().plusDays(LOAN_GRACE_DAYS);
-                        long daysLate = Math.max(0, java.time.temporal.ChronoUnit.DAYS.between(due, today));
-                        double fine = daysLate * DAILY_FINE;
-
-                        String memberName = (br.getMember() != null && br.getMember().getName() != null && !br.getMember().getName().isBlank())
-                                ? br.getMember().getName()
-                                : memberIdOrUnknown(br.getMember());
-                        String bookTitle = (br.getBook() != null && br.getBook().getTitle() != null && !br.getBook().getTitle().isBlank())
-                                ? br.getBook().getTitle()
-                                : "<unknown>";
-
-                        out.append(String.format(
-                                "%s – Member: %s – Book: %s – Days Overdue: %d – Fine: $%.2f",
-                                DF.format(br.getBorrowDate()), memberName, bookTitle, daysLate, fine
-                        )).append("\n");
-
-                        updateMessage("Scanning " + (i + 1) + "/" + n);
-                        updateProgress(i + 1, Math.max(1, n));
-                    }
-                    return out.toString();
-                } finally {
-                    em.close();
+                phase("Loading overdue...");
+                LocalDate today = LocalDate.now();
+
+                // متأخرة + المدى + فلترة العنوان/الكاتب كلها بالـ DB (range scan على due_date)
+                java.util.List<Borrowing> list = borrowingRepo.findOverdueWithBookAndMember(today, from, to, ft);
+
+                // الغرامات من الدفتر (بالسنتات) بعد accrual تراكمي، مش حساب من الصفر
+                FineService fines = FineService.shared();
+                fines.accrueToday();
+                java.util.List<Integer> ids = new ArrayList<>(list.size());
+                for (Borrowing br : list) ids.add(br.getId());
+                Map<Integer, FineLedger> ledger = fines.finesFor(ids);
+
+                StringBuilder out = new StringBuilder();
+                int n = list.size();
+                phase("Scanning", "loans");
+                for (int i = 0; i < n; i++) {
+                    if (isCancelled()) return "";
+                    Borrowing br = list.get(i);
+
+                    FineLedger f = ledger.get(br.getId());
+                    int daysLate = f == null ? 0 : f.getDays();
+                    long fineCents = f == null ? 0 : f.getAmountCents();
+
+                    String memberName = (br.getMember() != null && br.getMember().getName() != null && !br.getMember().getName().isBlank())
+                            ? br.getMember().getName()
+                            : memberIdOrUnknown(br.getMember());
+                    String bookTitle = (br.getBook() != null && br.getBook().getTitle() != null && !br.getBook().getTitle().isBlank())
+                            ? br.getBook().getTitle()
+                            : "<unknown>";
+
+                    out.append(String.format(
+                            "%s – Member: %s – Book: %s – Days Overdue: %d – Fine: %s",
+                            DF.format(br.getBorrowDate()), memberName, bookTitle, daysLate,
+                            FineService.formatCents(fineCents)
+                    )).append("\n");
+
+                    progress(i + 1, n);
                 }
+                return out.toString();
             }
         };
     }
 
     // 2) Borrowing Stats
     private Task<String> taskStats(LocalDate from, LocalDate to, String ft) {
-        return new Task<>() {
+        return new ProgressTask<>() {
             @Override protected String call() {
-                updateMessage("Loading stats...");
-                EntityManager em = JpaUtil.getEntityManager();
-                try {
-                    java.util.List<Borrowing> all = em.createQuery(
-                            "SELECT b FROM Borrowing b", Borrowing.class
-                    ).getResultList();
-
-                    // فلترة يدوية
-                    java.util.List<Borrowing> list = new ArrayList<>();
-                    for (Borrowing b : all) {
-                        if (b == null || b.getBorrowDate() == null) continue;
-                        if (from != null && b.getBorrowDate().isBefore(from)) continue;
-                        if (to   != null && b.getBorrowDate().isAfter(to)) continue;
-                        if (ft != null && !ft.isBlank()) {
-                            Book bk = b.getBook();
-                            String author = (bk != null && bk.getAuthor() != null) ? bk.getAuthor().toLowerCase() : "";
-                            String title  = (bk != null && bk.getTitle()  != null) ? bk.getTitle().toLowerCase()  : "";
-                            if (!(author.contains(ft) || title.contains(ft))) continue;
-                        }
-                        list.add(b);
-                    }
-
-                    //تجميعات
-                    Map<String, Long> byBook = new HashMap<>();
-                    Map<String, Long> byAuthor = new HashMap<>();
-                    Map<String, Long> byDate = new HashMap<>();
-
-                    for (Borrowing b : list) {
-                        String t = safeTitle(b.getBook());
-                        String a = safeAuthor(b.getBook());
-                        String d = DF.format(b.getBorrowDate());
-
-                        byBook.put(t, byBook.getOrDefault(t, 0L) + 1);
-                        byAuthor.put(a, byAuthor.getOrDefault(a, 0L) + 1);
-                        byDate.put(d, byDate.getOrDefault(d, 0L) + 1);
-                    }
-
-                    StringBuilder out = new StringBuilder();
-                    out.append("== Counts per Book ==\n");   appendCounts(out, byBook);
-                    out.append("\n== Counts per Author ==\n"); appendCounts(out, byAuthor);
-                    out.append("\n== Counts per Date ==\n");   appendCounts(out, byDate);
-
-                    updateMessage("Scanning " + list.size() + "/" + list.size());
-                    updateProgress(1, 1);
-                    return out.toString();
-                } finally {
-                    em.close();
-                }
+                phase("Loading stats...");
+                // المدى والفلتر والتجميع كلهم بالـ DB (GROUP BY)، بيرجع صف لكل مجموعة بس
+                BorrowingRepo.Stats stats = borrowingRepo.countStats(from, to, ft);
+                if (isCancelled()) return "";
+
+                StringBuilder out = new StringBuilder();
+                out.append("== Counts per Book ==\n");   appendCounts(out, labelled(stats.byTitle()));
+                out.append("\n== Counts per Author ==\n"); appendCounts(out, labelled(stats.byAuthor()));
+                out.append("\n== Counts per Date ==\n");   appendCounts(out, labelled(stats.byDate()));
+
+                finish("Counted " + stats.total() + " loans");
+                return out.toString();
             }
         };
     }
 
     // 3) Member Activity
     private Task<String> taskMemberActivity(LocalDate from, LocalDate to, Member filterMember, String ft) {
-        return new Task<>() {
+        return new ProgressTask<>() {
             @Override protected String call() {
-                updateMessage("Loading member activity...");
-                EntityManager em = JpaUtil.getEntityManager();
-                try {
-                    java.util.List<Borrowing> all = em.createQuery(
-                            "SELECT b FROM Borrowing b", Borrowing.class
-                    ).getResultList();
-
-                    Integer memberId = (filterMember == null) ? null : filterMember.getId();
-                    java.util.List<Borrowing> list = new ArrayList<>();
-
-                    for (Borrowing b : all) {
-                        if (b == null || b.getBorrowDate() == null) continue;
-                        if (from != null && b.getBorrowDate().isBefore(from)) continue;
-                        if (to   != null && b.getBorrowDate().isAfter(to)) continue;
-                        if (memberId != null) {
-                            if (b.getMember() == null || b.getMember().getId() == null) continue;
-                            if (!Objects.equals(b.getMember().getId(), memberId)) continue;
-                        }
-                        if (ft != null && !ft.isBlank()) {
-                            Book bk = b.getBook();
-                            String author = (bk != null && bk.getAuthor() != null) ? bk.getAuthor().toLowerCase() : "";
-                            String title  = (bk != null && bk.getTitle()  != null) ? bk.getTitle().toLowerCase()  : "";
-                            if (!(author.contains(ft) || title.contains(ft))) continue;
-                        }
-                        list.add(b);
-                    }
-
-                    // تجميع حسب العضو
-                    Map<Member, List<Borrowing>> byMember = new HashMap<>();
-                    for (Borrowing b : list) {
-                        Member m = b.getMember();
-                        if (m == null) continue;
-                        byMember.computeIfAbsent(m, k -> new ArrayList<>()).add(b);
-                    }
-
-                    StringBuilder out = new StringBuilder();
-                    int total = 0;
-                    for (List<Borrowing> l : byMember.values()) total += l.size();
-                    int scanned = 0;
-
-                    for (Map.Entry<Member, List<Borrowing>> e : byMember.entrySet()) {
-                        if (isCancelled()) return "";
-                        Member m = e.getKey();
-                        List<Borrowing> l = e.getValue();
-
-                        long active = 0;
-                        for (Borrowing b : l) if (b.getReturnDate() == null) active++;
-                        long returned = l.size() - active;
-
-                        String label = (m.getName() != null && !m.getName().isBlank())
-                                ? m.getName()
-                                : ("Member #" + (m.getId() == null ? "?" : m.getId()));
-
-                        out.append(String.format("%s — Active: %d, Returned: %d\n", label, active, returned));
-
-                        scanned += l.size();
-                        updateMessage("Scanning " + scanned + "/" + Math.max(1, total));
-                        updateProgress(scanned, Math.max(1, total));
-                    }
-                    return out.toString();
-                } finally {
-                    em.close();
+                phase("Loading member activity...");
+                Integer memberId = (filterMember == null) ? null : filterMember.getId();
+
+                // صف لكل عضو (active/returned محسوبين بالـ GROUP BY)، مرتب بالاسم
+                java.util.List<BorrowingRepo.MemberActivity> rows = borrowingRepo.findMemberActivity(from, to, memberId, ft);
+                if (isCancelled()) return "";
+
+                StringBuilder out = new StringBuilder();
+                for (BorrowingRepo.MemberActivity a : rows) {
+                    String label = (a.name() != null && !a.name().isBlank())
+                            ? a.name()
+                            : ("Member #" + a.memberId());
+
+                    out.append(String.format("%s — Active: %d, Returned: %d\n", label, a.active(), a.returned()));
                 }
+
+                finish(rows.size() + " members");
+                return out.toString();
             }
         };
     }
 
     /* ===================== Helpers بسيطة ===================== */
 
-    private String safeTitle(Book b) {
-        return (b == null || b.getTitle() == null || b.getTitle().isBlank()) ? "<unknown>" : b.getTitle();
-    }
-
-    private String safeAuthor(Book b) {
-        return (b == null || b.getAuthor() == null || b.getAuthor().isBlank()) ? "<unknown>" : b.getAuthor();
+    // مجموعة لكل قيمة من الـ DB؛ NULL والفاضي بيندمجوا تحت <unknown>
+    private Map<String, Long> labelled(List<BorrowingRepo.Count> counts) {
+        Map<String, Long> map = new HashMap<>();
+        for (BorrowingRepo.Count c : counts) {
+            String label;
+            if (c.key() instanceof LocalDate d) {
+                label = DF.format(d);
+            } else {
+                label = (c.key() == null || c.key().toString().isBlank()) ? "<unknown>" : c.key().toString();
+            }
+            map.merge(label, c.count(), Long::sum);
+        }
+        return map;
     }
 
     private void appendCounts(StringBuilder out, Map<String, Long> map) {
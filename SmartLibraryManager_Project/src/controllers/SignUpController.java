@@ -28,6 +28,8 @@ public class SignUpController {
 
     private static final String LOGIN_FXML = "/smartlibrarymanager_project/fxml_files/login.fxml";
 
+    private final FxCommands commands = new FxCommands();
+
     @FXML
     private void handleSignUp(ActionEvent event) {
         String first = t(firstNameField);
@@ -50,18 +52,30 @@ public class SignUpController {
             return;
         }
 
+        // الفحص والإضافة بالخلفية؛ كبسة تانية وهو شغّال بتنتجاهل
+        commands.once("signup", () -> register(first, last, email, pass), created -> {
+            if (!created) {
+                alert(Alert.AlertType.WARNING, "Email Exists", "This email is already registered. Try signing in.");
+                return;
+            }
+            alert(Alert.AlertType.INFORMATION, "Success", "Account created! You can now log in.");
+            goBackToLogin(event);
+        }, e -> alert(Alert.AlertType.ERROR, "DB Error", e.getMessage()));
+    }
+
+    // false لو الإيميل مسجّل
+    private boolean register(String first, String last, String email, String pass) {
         EntityManager em = JpaUtil.getEntityManager();
         EntityTransaction tx = em.getTransaction();
 
         try {
             Long cnt = em.createQuery(
-                    "SELECT COUNT(u) FROM User u WHERE LOWER(u.email) = :e", Long.class)
+                    "SELECT COUNT(u) FROM User u WHERE u.emailNormalized = :e", Long.class)
                     .setParameter("e", email)
                     .getSingleResult();
 
             if (cnt != null && cnt > 0) {
-                alert(Alert.AlertType.WARNING, "Email Exists", "This email is already registered. Try signing in.");
-                return;
+                return false;
             }
 
             String md5 = md5(pass);
@@ -76,13 +90,11 @@ public class SignUpController {
             em.persist(u); // add new user
 
             tx.commit();
+            return true;
 
-            alert(Alert.AlertType.INFORMATION, "Success", "Account created! You can now log in.");
-            goBackToLogin(event);
-
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             if (tx.isActive()) tx.rollback();
-            alert(Alert.AlertType.ERROR, "DB Error", e.getMessage());
+            throw e;
         } finally {
             em.close();
         }
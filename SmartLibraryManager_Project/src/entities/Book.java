@@ -1,14 +1,43 @@
 package entities;
 
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 @Entity
-@Table(name = "books")
+// L2 cache مشترك: أحدث 1000 كتاب بمراجع قوية (soft) والباقي weak
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 1000)
+// نتائج الاستعلام بتتخزن وبتنمسح تلقائياً مع أي تعديل على Book (Repositories بتمسح بعد الكتابات المباشرة)
+@NamedQueries({
+    @NamedQuery(name = "Book.findAll",
+            query = "SELECT b FROM Book b ORDER BY b.id",
+            hints = @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE, value = HintValues.TRUE)),
+    // الشاشات بتكتب "Available" والـ constructor بيكتب "AVAILABLE" → مقارنة بدون حالة الأحرف زي claimBook
+    @NamedQuery(name = "Book.findAvailable",
+            query = "SELECT b FROM Book b WHERE LOWER(b.status) = 'available' ORDER BY b.title",
+            hints = @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE, value = HintValues.TRUE))
+})
+@Table(name = "books", indexes = {
+        @Index(name = "idx_books_status_title", columnList = "status, title"),
+        // فحص العنوان المكرر + ترتيب الصفحات
+        @Index(name = "idx_books_title", columnList = "title"),
+        @Index(name = "idx_books_author", columnList = "author")
+})
 public class Book {
 
     @Id
@@ -24,6 +53,11 @@ public class Book {
     @Column(nullable = false, length = 30)
     private String status = "AVAILABLE";
 
+    // optimistic locking: كل UPDATE بيتحقق من الـ version وبيزيده (كتابتين متزامنتين → OptimisticLockException)
+    @Version
+    @Column(name = "version")
+    private long version;
+
     // Constructors 
     public Book() {
     }
@@ -58,6 +92,9 @@ public class Book {
    public String getStatus() { return status; }
 public void setStatus(String status) { this.status = status; }
 
+    public long getVersion() {
+        return version;
+    }
 
     @Override
     public String toString() {
@@ -7,13 +7,27 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 @Entity
-@Table(name = "borrowings")
+@Table(name = "borrowings", indexes = {
+        // إعارات العضو النشطة (حد الإعارات + المتأخرات)
+        @Index(name = "idx_borrowings_member_return", columnList = "member_id, return_date"),
+        // الإعارات النشطة ضمن مدى تواريخ (التقارير، المتأخرات، التذكيرات)
+        @Index(name = "idx_borrowings_return_borrow", columnList = "return_date, borrow_date"),
+        // ترتيب الهيستوري حسب التاريخ (keyset)
+        @Index(name = "idx_borrowings_borrow_date", columnList = "borrow_date"),
+        // المتأخرات والتذكيرات حسب موعد الإرجاع
+        @Index(name = "idx_borrowings_return_due", columnList = "return_date, due_date")
+})
 public class Borrowing {
+    // مدة الإعارة: موعد الإرجاع = تاريخ الإعارة + LOAN_DAYS (بينحفظ بـ due_date وقت الإعارة)
+    public static final int LOAN_DAYS = 14;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
@@ -28,12 +42,29 @@ public class Borrowing {
     @JoinColumn(name = "member_id")
     private Member member;
 
+    // نفس أعمدة الـ FK للقراءة بس: JPQL على br.bookId / br.memberId ما بيعمل JOIN
+    // (مهم لـ SELECT ... FOR UPDATE: القفل بيمسك صفوف الإعارات بس مش الكتب والأعضاء)
+    @Column(name = "book_id", insertable = false, updatable = false)
+    private Integer bookId;
+
+    @Column(name = "member_id", insertable = false, updatable = false)
+    private Integer memberId;
+
     @Column(name = "borrow_date", nullable = false)
     private LocalDate borrowDate;
 
     @Column(name = "return_date")
     private LocalDate returnDate;
 
+    // الصفوف القديمة بتتعبّى بـ SchemaUpgrade (borrow_date + LOAN_DAYS)
+    @Column(name = "due_date")
+    private LocalDate dueDate;
+
+    // optimistic locking: كل UPDATE بيتحقق من الـ version وبيزيده (كتابتين متزامنتين → OptimisticLockException)
+    @Version
+    @Column(name = "version")
+    private long version;
+
     //  Constructors 
     public Borrowing() {
     }
@@ -42,6 +73,7 @@ public class Borrowing {
         this.book = book;
         this.member = member;
         this.borrowDate = borrowDate;
+        this.dueDate = borrowDate == null ? null : borrowDate.plusDays(LOAN_DAYS);
     }
 
     //  Getters & Setters 
@@ -65,6 +97,15 @@ public class Borrowing {
         this.member = member;
     }
 
+    // null لإعارة جديدة لسا ما انقرت من القاعدة؛ استعملي getBook()/getMember()
+    public Integer getBookId() {
+        return bookId;
+    }
+
+    public Integer getMemberId() {
+        return memberId;
+    }
+
     public LocalDate getBorrowDate() {
         return borrowDate;
     }
@@ -73,6 +114,14 @@ public class Borrowing {
         this.borrowDate = borrowDate;
     }
 
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    public void setDueDate(LocalDate dueDate) {
+        this.dueDate = dueDate;
+    }
+
     public LocalDate getReturnDate() {
         return returnDate;
     }
@@ -84,4 +133,8 @@ public class Borrowing {
     public boolean isReturned() {
         return returnDate != null;
     }
+
+    public long getVersion() {
+        return version;
+    }
 }
@@ -0,0 +1,79 @@
+package entities;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+// سجل تشغيلات الـ accrual؛ آخر صف هو الـ checkpoint (لحد أي يوم + آخر إعارة كانت موجودة)
+@Entity
+@Table(name = "fine_accrual_runs")
+public class FineAccrualRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "as_of", nullable = false)
+    private LocalDate asOf;
+
+    // أكبر id إعارة وقت التشغيل: الإعارات الأجدد لسا ما انفحصت
+    @Column(name = "last_borrowing_id", nullable = false)
+    private int lastBorrowingId;
+
+    @Column(name = "loans", nullable = false)
+    private int loans;
+
+    @Column(name = "posted_cents", nullable = false)
+    private long postedCents;
+
+    @Column(name = "ran_at", nullable = false)
+    private LocalDateTime ranAt;
+
+    //  Constructors
+    public FineAccrualRun() {
+    }
+
+    public FineAccrualRun(LocalDate asOf, int lastBorrowingId, int loans, long postedCents) {
+        this.asOf = asOf;
+        this.lastBorrowingId = lastBorrowingId;
+        this.loans = loans;
+        this.postedCents = postedCents;
+        this.ranAt = LocalDateTime.now();
+    }
+
+    //  Getters
+    public Integer getId() {
+        return id;
+    }
+
+    public LocalDate getAsOf() {
+        return asOf;
+    }
+
+    public int getLastBorrowingId() {
+        return lastBorrowingId;
+    }
+
+    public int getLoans() {
+        return loans;
+    }
+
+    public long getPostedCents() {
+        return postedCents;
+    }
+
+    public LocalDateTime getRanAt() {
+        return ranAt;
+    }
+
+    @Override
+    public String toString() {
+        return "FineAccrualRun{asOf=" + asOf + ", lastBorrowing=" + lastBorrowingId + ", loans=" + loans
+                + ", cents=" + postedCents + '}';
+    }
+}
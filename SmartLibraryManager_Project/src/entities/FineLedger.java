@@ -0,0 +1,97 @@
+package entities;
+
+import java.time.LocalDate;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+// غرامة إعارة وحدة بالسنتات (fixed-point، بدون double). الصف بيتحدث تراكمياً من
+// Repositories.FineLedgerRepo.accrue: بس الأيام الجديدة من accruedThrough لليوم بتنضاف،
+// والفرق بينزل برصيد العضو (MemberFineBalance) بنفس الـ transaction.
+// closed = الإعارة رجعت والمبلغ صار نهائي؛ الصفوف المسكّرة ما بتنقرا تاني
+@Entity
+@Table(name = "fine_ledger", indexes = {
+        // الصفوف المفتوحة اللي إعارتها رجعت (لازم تتسكّر)
+        @Index(name = "idx_fine_ledger_closed", columnList = "closed"),
+        @Index(name = "idx_fine_ledger_member", columnList = "member_id")
+})
+public class FineLedger {
+    // نفس id الإعارة (غرامة وحدة لكل إعارة)
+    @Id
+    @Column(name = "borrowing_id")
+    private Integer borrowingId;
+
+    @Column(name = "member_id", nullable = false)
+    private Integer memberId;
+
+    @Column(name = "days", nullable = false)
+    private int days;
+
+    @Column(name = "amount_cents", nullable = false)
+    private long amountCents;
+
+    // الأيام محسوبة لحد هذا التاريخ (مش ضمناً): اليوم للإعارة المفتوحة، تاريخ الإرجاع للمسكّرة
+    @Column(name = "accrued_through", nullable = false)
+    private LocalDate accruedThrough;
+
+    @Column(name = "closed", nullable = false)
+    private boolean closed;
+
+    //  Constructors
+    public FineLedger() {
+    }
+
+    public FineLedger(Integer borrowingId, Integer memberId) {
+        this.borrowingId = borrowingId;
+        this.memberId = memberId;
+    }
+
+    //  Getters & Setters
+    public Integer getBorrowingId() {
+        return borrowingId;
+    }
+
+    public Integer getMemberId() {
+        return memberId;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public void setDays(int days) {
+        this.days = days;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
+    }
+
+    public LocalDate getAccruedThrough() {
+        return accruedThrough;
+    }
+
+    public void setAccruedThrough(LocalDate accruedThrough) {
+        this.accruedThrough = accruedThrough;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setClosed(boolean closed) {
+        this.closed = closed;
+    }
+
+    @Override
+    public String toString() {
+        return "FineLedger{borrowing=" + borrowingId + ", member=" + memberId + ", days=" + days
+                + ", cents=" + amountCents + ", through=" + accruedThrough + (closed ? ", closed" : "") + '}';
+    }
+}
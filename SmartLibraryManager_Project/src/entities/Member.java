@@ -1,14 +1,37 @@
 package entities;
 
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 @Entity
-@Table(name = "members")
+// L2 cache مشترك: أحدث 1000 عضو بمراجع قوية (soft) والباقي weak
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 1000)
+// نتائج الاستعلام بتتخزن وبتنمسح تلقائياً مع أي تعديل على Member (Repositories بتمسح بعد الكتابات المباشرة)
+@NamedQueries({
+    @NamedQuery(name = "Member.findAll",
+            query = "SELECT m FROM Member m ORDER BY m.id",
+            hints = @QueryHint(name = QueryHints.QUERY_RESULTS_CACHE, value = HintValues.TRUE))
+})
+@Table(name = "members", indexes = {
+        @Index(name = "idx_members_name", columnList = "name"),
+        @Index(name = "idx_members_contact", columnList = "contact")
+})
 public class Member {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -20,6 +43,11 @@ public class Member {
     @Column(nullable = false, length = 100)
     private String contact;
 
+    // optimistic locking: كل UPDATE بيتحقق من الـ version وبيزيده (كتابتين متزامنتين → OptimisticLockException)
+    @Version
+    @Column(name = "version")
+    private long version;
+
     //  Constructors 
     public Member() {
     }
@@ -51,6 +79,10 @@ public class Member {
         this.contact = contact;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     @Override
     public String toString() {
         return name + " (" + contact + ")";
@@ -0,0 +1,48 @@
+package entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+// رصيد الغرامات لكل عضو بالسنتات = مجموع amount_cents لصفوفه بـ fine_ledger.
+// بيتحدث بالفرق بنفس transaction الـ accrual، فمجموع الغرامات المستحقة قراءة بالـ PK
+// (أو SUM على جدول صغير) بدل ما نمر على كل الإعارات المفتوحة
+@Entity
+@Table(name = "member_fine_balances")
+public class MemberFineBalance {
+    // نفس id العضو (بدون FK زي member_loan_stats)
+    @Id
+    @Column(name = "member_id")
+    private Integer id;
+
+    @Column(name = "balance_cents", nullable = false)
+    private long balanceCents;
+
+    //  Constructors
+    public MemberFineBalance() {
+    }
+
+    public MemberFineBalance(Integer memberId, long balanceCents) {
+        this.id = memberId;
+        this.balanceCents = balanceCents;
+    }
+
+    //  Getters & Setters
+    public Integer getId() {
+        return id;
+    }
+
+    public long getBalanceCents() {
+        return balanceCents;
+    }
+
+    public void setBalanceCents(long balanceCents) {
+        this.balanceCents = balanceCents;
+    }
+
+    @Override
+    public String toString() {
+        return "MemberFineBalance{member=" + id + ", cents=" + balanceCents + '}';
+    }
+}
@@ -0,0 +1,69 @@
+package entities;
+
+import java.time.LocalDate;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+// عدّاد مخزّن لكل عضو: عدد الإعارات النشطة + أقرب موعد إرجاع مفتوح.
+// بيتحدث بنفس transaction الإعارة/الإرجاع (Repositories.MemberLoanStatsRepo) فحد الإعارات
+// والمتأخرات صاروا قراءة بالـ primary key بدل COUNT على جدول الإعارات.
+// كل الكتابات عليه بتصير وصف العضو مقفول (PESSIMISTIC_WRITE) فما في حاجة لـ @Version.
+// مش بالـ L2 cache (shared-cache-mode = ENABLE_SELECTIVE)
+@Entity
+@Table(name = "member_loan_stats")
+public class MemberLoanStats {
+    // نفس id العضو (بدون FK: حذف العضو ما بيتعطل، والـ reconciliation بيمسح الصفوف اليتيمة)
+    @Id
+    @Column(name = "member_id")
+    private Integer id;
+
+    @Column(name = "active_loans", nullable = false)
+    private int activeLoans;
+
+    // null لو ما في إعارات نشطة
+    @Column(name = "earliest_due")
+    private LocalDate earliestDue;
+
+    //  Constructors
+    public MemberLoanStats() {
+    }
+
+    public MemberLoanStats(Integer memberId, int activeLoans, LocalDate earliestDue) {
+        this.id = memberId;
+        this.activeLoans = activeLoans;
+        this.earliestDue = earliestDue;
+    }
+
+    // في إعارة نشطة موعدها فات؟
+    public boolean hasOverdue(LocalDate asOf) {
+        return earliestDue != null && earliestDue.isBefore(asOf);
+    }
+
+    //  Getters & Setters
+    public Integer getId() {
+        return id;
+    }
+
+    public int getActiveLoans() {
+        return activeLoans;
+    }
+
+    public void setActiveLoans(int activeLoans) {
+        this.activeLoans = activeLoans;
+    }
+
+    public LocalDate getEarliestDue() {
+        return earliestDue;
+    }
+
+    public void setEarliestDue(LocalDate earliestDue) {
+        this.earliestDue = earliestDue;
+    }
+
+    @Override
+    public String toString() {
+        return "MemberLoanStats{member=" + id + ", active=" + activeLoans + ", earliestDue=" + earliestDue + '}';
+    }
+}
@@ -5,11 +5,16 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        // تسجيل الدخول بيدوّر على الإيميل lowercase → عمود جاهز مع index بدل LOWER(email)
+        @Index(name = "idx_users_email_normalized", columnList = "email_normalized", unique = true)
+})
 public class User {
 
     @Id
@@ -25,6 +30,9 @@ public class User {
     @Column(nullable = false, unique = true, length = 100)
     private String email;
 
+    @Column(name = "email_normalized", length = 100)
+    private String emailNormalized;
+
     @Column(name = "password_hash", nullable = false, length = 255)
     private String passwordHash;
 
@@ -48,7 +56,22 @@ public class User {
     public void setLastName(String lastName) { this.lastName = lastName; }
 
     public String getEmail() { return email; }
-    public void setEmail(String email) { this.email = email; }
+    public void setEmail(String email) {
+        this.email = email;
+        this.emailNormalized = normalizeEmail(email);
+    }
+
+    public String getEmailNormalized() { return emailNormalized; }
+
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase();
+    }
+
+    @PrePersist
+    @PreUpdate
+    private void syncEmailNormalized() {
+        this.emailNormalized = normalizeEmail(email);
+    }
 
     public String getPasswordHash() { return passwordHash; }
     public void setPasswordHash(String passwordHash) { this.passwordHash = passwordHash; }
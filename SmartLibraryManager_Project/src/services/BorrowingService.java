@@ -0,0 +1,86 @@
+package services;
+
+import Repositories.BorrowingRepo;
+import Repositories.BorrowingRepo.Basket;
+import Repositories.BorrowingRepo.Checkout;
+import entities.Borrowing;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+// قواعد الإعارة والإرجاع بدون أي JavaFX: الـ controllers والمهام (وأي client تاني) بيستعملوها.
+// كل عملية transaction قصيرة وحدة؛ منع الإعارة المزدوجة على مستوى القاعدة (شوفي BorrowingRepo.checkout).
+// بعد الـ commit بنحدّث فهرس مواعيد الإرجاع (DueDateIndex)
+public class BorrowingService {
+
+    // سياسات الإعارة الافتراضية
+    public static final int DEFAULT_MAX_ACTIVE = 5;
+    public static final boolean DEFAULT_BLOCK_IF_OVERDUE = true;
+
+    private final BorrowingRepo repo;
+    private final int maxActive;            // <= 0 → بدون حد
+    private final boolean blockIfOverdue;
+    private final DueDateIndex dueIndex;
+
+    public BorrowingService() {
+        this(new BorrowingRepo(), DEFAULT_MAX_ACTIVE, DEFAULT_BLOCK_IF_OVERDUE);
+    }
+
+    public BorrowingService(BorrowingRepo repo, int maxActive, boolean blockIfOverdue) {
+        this(repo, maxActive, blockIfOverdue, DueDateIndex.shared());
+    }
+
+    public BorrowingService(BorrowingRepo repo, int maxActive, boolean blockIfOverdue, DueDateIndex dueIndex) {
+        this.repo = repo;
+        this.maxActive = maxActive;
+        this.blockIfOverdue = blockIfOverdue;
+        this.dueIndex = dueIndex;
+    }
+
+    public int getMaxActive() { return maxActive; }
+
+    public boolean isBlockIfOverdue() { return blockIfOverdue; }
+
+    public Checkout borrow(int bookId, int memberId, LocalDate borrowDate) {
+        checkDate(borrowDate);
+        Checkout c = repo.checkout(bookId, memberId, borrowDate, maxActive, blockIfOverdue);
+        if (c.ok()) indexed(c.borrowing());
+        return c;
+    }
+
+    // يا كل الكتب بتنعار يا ولا واحد
+    public Basket borrowMany(int memberId, Collection<Integer> bookIds, LocalDate borrowDate) {
+        checkDate(borrowDate);
+        if (bookIds.isEmpty()) throw new IllegalArgumentException("No books selected");
+        Basket b = repo.checkoutAll(memberId, bookIds, borrowDate, maxActive, blockIfOverdue);
+        if (b.ok()) b.borrowings().forEach(this::indexed);
+        return b;
+    }
+
+    // false لو الإعارة مش موجودة أو مرجّعة من قبل
+    public boolean returnBook(int borrowingId, LocalDate returnDate) {
+        checkDate(returnDate);
+        if (repo.checkin(borrowingId, returnDate) == null) return false;
+        dueIndex.removed(borrowingId);
+        return true;
+    }
+
+    // يرجّع ids الكتب اللي رجعت متاحة (المرجّعة من قبل بتنتجاهل)
+    public List<Integer> returnMany(Collection<Integer> borrowingIds, LocalDate returnDate) {
+        checkDate(returnDate);
+        List<Integer> freed = repo.checkinAll(borrowingIds, returnDate);
+        // المرجّعة من قبل أصلاً مش بالفهرس
+        dueIndex.removedAll(borrowingIds);
+        return freed;
+    }
+
+    private void indexed(Borrowing br) {
+        dueIndex.added(br.getId(), br.getBook().getId(), br.getMember().getId(), br.getDueDate());
+    }
+
+    private static void checkDate(LocalDate d) {
+        if (d == null) throw new IllegalArgumentException("Date is required");
+        if (d.isAfter(LocalDate.now())) throw new IllegalArgumentException("Future dates are not allowed");
+    }
+}
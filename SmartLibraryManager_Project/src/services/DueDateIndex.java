@@ -0,0 +1,280 @@
+package services;
+
+import Repositories.BorrowingRepo;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// فهرس بالذاكرة للإعارات المفتوحة حسب موعد الإرجاع: buckets يومية مرتبة (TreeMap يوم → إعارات).
+// "شو المتأخر هلّق" و"شو موعده خلال 48 ساعة" صاروا headMap/subMap بحجم النتيجة بدل scan على القاعدة؛
+// اللي بدو تفاصيل (عنوان، اسم) بيجيبها بالـ ids من BorrowingRepo.findOpenByIdsWithBookAndMember.
+//
+// بينحمّل مرة وحدة أول ما JPA يجهز (start) وبيتحدث من BorrowingService بعد كل إعارة/إرجاع.
+// ساعة بالخلفية بتنشر حدث لما إعارات تصير متأخرة (يوم جديد)، وبتعيد التحميل كل RESYNC_MINUTES
+// عشان تلقط تغييرات من أجهزة تانية على نفس القاعدة
+public final class DueDateIndex {
+
+    private static final Logger LOG = Logger.getLogger(DueDateIndex.class.getName());
+
+    public static final long RESYNC_MINUTES = 10;
+
+    public record Entry(int borrowingId, int bookId, int memberId, LocalDate dueDate) {}
+
+    private static final DueDateIndex SHARED = new DueDateIndex(new BorrowingRepo());
+
+    public static DueDateIndex shared() {
+        return SHARED;
+    }
+
+    private final BorrowingRepo repo;
+
+    // الـ buckets ما بتضل فاضية، فعدد الـ buckets اللي بنمر عليها ≤ حجم النتيجة
+    private final NavigableMap<LocalDate, Map<Integer, Entry>> byDue = new TreeMap<>();
+    private final Map<Integer, Entry> byId = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // التحديثات اللي صارت وإحنا بنقرأ من القاعدة بتنعاد فوق النتيجة
+    private boolean reloading;
+    private final List<Consumer<DueDateIndex>> journal = new ArrayList<>();
+    private volatile boolean loaded;
+
+    // كل اللي موعده قبل هذا اليوم انعلن متأخر (أو كان متأخر وقت التحميل)
+    private LocalDate announcedBefore;
+
+    private final List<Consumer<List<Entry>>> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService clock;
+
+    DueDateIndex(BorrowingRepo repo) {
+        this.repo = repo;
+    }
+
+    // ====== التحميل ======
+
+    // تحميل + تشغيل الساعة (مرة وحدة؛ بينادى من thread الـ bootstrap بعد ما JPA يجهز)
+    public synchronized void start() {
+        if (clock != null) return;
+        try {
+            ensureLoaded();
+        } catch (RuntimeException ex) {
+            // الـ resync بيعيد المحاولة، والمستعملين بينادوا ensureLoaded
+            LOG.log(Level.WARNING, "Due-date index load failed", ex);
+        }
+        clock = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "DueDateClock");
+            t.setDaemon(true);
+            return t;
+        });
+        clock.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.MINUTES);
+        clock.scheduleWithFixedDelay(this::resync, RESYNC_MINUTES, RESYNC_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (clock != null) {
+            clock.shutdownNow();
+            clock = null;
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (!loaded) reload();
+        }
+    }
+
+    // projection واحد للإعارات المفتوحة بدون JOIN؛ القراءة برّا القفل
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            reloading = true;
+            journal.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<Object[]> rows;
+        try {
+            rows = repo.findOpenDues();
+        } catch (RuntimeException ex) {
+            lock.writeLock().lock();
+            try {
+                reloading = false;
+                journal.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw ex;
+        }
+
+        lock.writeLock().lock();
+        try {
+            byDue.clear();
+            byId.clear();
+            for (Object[] row : rows) {
+                if (row[3] == null) continue;
+                put(new Entry((Integer) row[0], (Integer) row[1], (Integer) row[2], (LocalDate) row[3]));
+            }
+            for (Consumer<DueDateIndex> op : journal) op.accept(this);
+            journal.clear();
+            reloading = false;
+            if (announcedBefore == null) announcedBefore = LocalDate.now();
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void resync() {
+        try {
+            reload();
+        } catch (RuntimeException ex) {
+            LOG.log(Level.WARNING, "Due-date index resync failed", ex);
+        }
+    }
+
+    // ====== التحديث (بعد commit) ======
+
+    public void added(int borrowingId, int bookId, int memberId, LocalDate dueDate) {
+        Entry e = new Entry(borrowingId, bookId, memberId, dueDate);
+        boolean alreadyOverdue;
+        lock.writeLock().lock();
+        try {
+            put(e);
+            if (reloading) journal.add(ix -> ix.put(e));
+            alreadyOverdue = announcedBefore != null && dueDate.isBefore(announcedBefore);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // إعارة بتاريخ قديم موعدها فات من أول لحظة
+        if (alreadyOverdue) publish(List.of(e));
+    }
+
+    public void removed(int borrowingId) {
+        removedAll(List.of(borrowingId));
+    }
+
+    public void removedAll(Collection<Integer> borrowingIds) {
+        lock.writeLock().lock();
+        try {
+            for (Integer id : borrowingIds) {
+                remove(id);
+                if (reloading) journal.add(ix -> ix.remove(id));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(Entry e) {
+        remove(e.borrowingId());
+        byId.put(e.borrowingId(), e);
+        byDue.computeIfAbsent(e.dueDate(), d -> new LinkedHashMap<>()).put(e.borrowingId(), e);
+    }
+
+    private void remove(int borrowingId) {
+        Entry old = byId.remove(borrowingId);
+        if (old == null) return;
+        Map<Integer, Entry> bucket = byDue.get(old.dueDate());
+        bucket.remove(borrowingId);
+        if (bucket.isEmpty()) byDue.remove(old.dueDate());
+    }
+
+    // ====== الاستعلامات ======
+
+    // موعدها قبل asOf، الأقدم أول
+    public List<Entry> overdue(LocalDate asOf) {
+        lock.readLock().lock();
+        try {
+            return flatten(byDue.headMap(asOf, false));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // موعدها بين from و to (ضمناً)
+    public List<Entry> dueBetween(LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            return flatten(byDue.subMap(from, true, to, true));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static List<Integer> ids(List<Entry> entries) {
+        List<Integer> ids = new ArrayList<>(entries.size());
+        for (Entry e : entries) ids.add(e.borrowingId());
+        return ids;
+    }
+
+    private static List<Entry> flatten(Map<LocalDate, Map<Integer, Entry>> buckets) {
+        List<Entry> out = new ArrayList<>();
+        for (Map<Integer, Entry> b : buckets.values()) out.addAll(b.values());
+        return out;
+    }
+
+    // ====== أحداث "صارت متأخرة" ======
+
+    // الـ listener بينادى على thread الساعة (أو thread الإعارة)؛ الواجهة تستعمل Platform.runLater.
+    // بيرجع Runnable لإلغاء الاشتراك
+    public Runnable subscribe(Consumer<List<Entry>> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    // يوم جديد: اللي موعده بين آخر إعلان واليوم صار متأخر
+    public void advanceTo(LocalDate today) {
+        List<Entry> became;
+        lock.writeLock().lock();
+        try {
+            if (announcedBefore == null || !today.isAfter(announcedBefore)) return;
+            became = flatten(byDue.subMap(announcedBefore, true, today, false));
+            announcedBefore = today;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!became.isEmpty()) publish(became);
+    }
+
+    private void tick() {
+        advanceTo(LocalDate.now());
+    }
+
+    private void publish(List<Entry> became) {
+        for (Consumer<List<Entry>> l : listeners) {
+            try {
+                l.accept(became);
+            } catch (RuntimeException ex) {
+                LOG.log(Level.WARNING, "Overdue listener failed", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package services;
+
+import Repositories.FineLedgerRepo;
+import Repositories.FineLedgerRepo.Accrual;
+import entities.FineLedger;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// الغرامات: accrual تراكمي على دفتر الغرامات + قراءة الأرصدة.
+// start بيشغّل accrual مرة وقت الإقلاع وبعدين كل ما DueDateIndex ينشر إعارات صارت متأخرة
+// (يوم جديد)؛ المهام والتقارير بتنادي accrue قبل ما تقرأ (رخيص لو انعمل اليوم)
+public final class FineService {
+
+    private static final Logger LOG = Logger.getLogger(FineService.class.getName());
+
+    private static final FineService SHARED = new FineService(new FineLedgerRepo(), DueDateIndex.shared());
+
+    public static FineService shared() {
+        return SHARED;
+    }
+
+    private final FineLedgerRepo repo;
+    private final DueDateIndex dueIndex;
+    private Runnable unsubscribe;
+
+    FineService(FineLedgerRepo repo, DueDateIndex dueIndex) {
+        this.repo = repo;
+        this.dueIndex = dueIndex;
+    }
+
+    public synchronized void start() {
+        if (unsubscribe != null) return;
+        unsubscribe = dueIndex.subscribe(became -> accrueQuietly());
+        accrueQuietly();
+    }
+
+    public synchronized void stop() {
+        if (unsubscribe != null) {
+            unsubscribe.run();
+            unsubscribe = null;
+        }
+    }
+
+    public Accrual accrueToday() {
+        return repo.accrue(LocalDate.now());
+    }
+
+    private void accrueQuietly() {
+        try {
+            Accrual a = accrueToday();
+            if (a.loans() > 0) LOG.info("Fine accrual: " + a);
+        } catch (RuntimeException ex) {
+            LOG.log(Level.WARNING, "Fine accrual failed", ex);
+        }
+    }
+
+    public long outstandingCents(int memberId) {
+        return repo.findOutstandingCents(memberId);
+    }
+
+    public long totalOutstandingCents() {
+        return repo.findTotalOutstandingCents();
+    }
+
+    public long countMembersWithFines() {
+        return repo.countMembersWithFines();
+    }
+
+    public Map<Integer, FineLedger> finesFor(Collection<Integer> borrowingIds) {
+        return repo.findByBorrowingIds(borrowingIds);
+    }
+
+    // 1234 → "$12.34" (بدون double)
+    public static String formatCents(long cents) {
+        String sign = cents < 0 ? "-" : "";
+        long abs = Math.abs(cents);
+        return String.format("%s$%d.%02d", sign, abs / 100, abs % 100);
+    }
+}
@@ -1,22 +1,75 @@
 package smartlibrarymanager_project;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.stage.Stage;
+import util.JpaMetrics;
+import util.JpaUtil;
+import services.DueDateIndex;
+import services.FineService;
+import util.StartupLog;
+import util.TaskExecutor;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class SmartLibraryManager_Project extends Application {
 
+    private static final Logger LOG = Logger.getLogger(SmartLibraryManager_Project.class.getName());
+
     @Override
     public void start(Stage stage) throws Exception {
+        StartupLog.mark("FX start");
+        // الـ ORM بيجهز بالخلفية وشاشة الدخول بتترسم
+        JpaUtil.startAsync()
+               // فهرس مواعيد الإرجاع بينحمّل مرة وحدة بعد ما القاعدة تجهز (على thread الـ bootstrap)
+               .thenRun(() -> StartupLog.phase("due-date index", DueDateIndex.shared()::start))
+               // الغرامات لحد اليوم (تراكمي من آخر تشغيل) وبعدين مع كل يوم جديد
+               .thenRun(() -> StartupLog.phase("fine accrual", FineService.shared()::start))
+               // أي مرحلة فشلت (القاعدة، الفهرس، الغرامات): بتنسجّل وبيطلع تنبيه بدل ما تضيع
+               .exceptionally(ex -> {
+                   startupFailed(ex);
+                   return null;
+               });
 
         Parent root = FXMLLoader.load(
                 getClass().getResource("/smartlibrarymanager_project/fxml_files/login.fxml")
         );
+        StartupLog.mark("login.fxml loaded");
 
         stage.setScene(new Scene(root));
         stage.show();
+        Platform.runLater(() -> StartupLog.mark("first frame (login shown)"));
+    }
+
+    private static void startupFailed(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        LOG.log(Level.SEVERE, "Startup failed", cause);
+        Platform.runLater(() -> {
+            Alert a = new Alert(Alert.AlertType.ERROR);
+            a.setTitle("Error");
+            a.setHeaderText("Startup failed");
+            a.setContentText("The library could not finish starting up: " + cause.getMessage()
+                    + "\nSome screens may not work until the app is restarted.");
+            a.show();
+        });
+    }
+
+    @Override
+    public void stop() {
+        FineService.shared().stop();
+        DueDateIndex.shared().stop();
+        // المهام الشغّالة بتاخد فرصة تخلص قبل ما القاعدة تتسكّر
+        TaskExecutor.shared().shutdown(5, TimeUnit.SECONDS);
+        // أرقام الـ pool (hit rate، وقت الانتظار) وإعادة استخدام الـ EntityManager والـ cache للجلسة كلها
+        LOG.info("[jpa] " + JpaMetrics.summary());
+        JpaUtil.close();
     }
 
     public static void main(String[] args) {
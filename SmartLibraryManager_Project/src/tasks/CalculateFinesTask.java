@@ -1,64 +1,86 @@
 package tasks;
 
+import Repositories.BorrowingRepo;
 import entities.Borrowing;
-import util.JpaUtil;
-import javafx.concurrent.Task;
+import entities.FineLedger;
+import services.DueDateIndex;
+import services.FineService;
 
-import javax.persistence.EntityManager;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
 
-public class CalculateFinesTask extends Task<String> {
-    @Override
-    protected String call() {
-        updateMessage("Calculating fines...");
-        EntityManager em = null;
-        try {
-            em = JpaUtil.getEntityManager();
-            LocalDate today = LocalDate.now();
+// الغرامات صفحة صفحة: ids المتأخرة من فهرس المواعيد، وكل صفحة (PAGE_SIZE) بتنقرا
+// (الإعارة + الكتاب + العضو + الغرامة) وبتنكتب على الـ sink وبعدين بتنرمى.
+// الإلغاء بين الصفحات؛ النتيجة ملخص قصير
+public class CalculateFinesTask extends ProgressTask<String> {
 
-            List<Borrowing> active = em.createQuery(
-                    "SELECT br FROM Borrowing br " +
-                    "WHERE br.returnDate IS NULL " +
-                    "ORDER BY br.id DESC",
-                    Borrowing.class).getResultList();
+    public static final int PAGE_SIZE = 500;
 
-            if (isCancelled()) return "Canceled.\n";
-            if (active.isEmpty()) return "No fines due.\n";
+    private final OutputSink out;
+    private final int pageSize;
 
-            StringBuilder sb = new StringBuilder();
-            int i = 0, total = Math.max(active.size(), 1);
-            int countOverdue = 0;
+    public CalculateFinesTask(OutputSink out) {
+        this(out, PAGE_SIZE);
+    }
 
-            for (Borrowing br : active) {
-                if (isCancelled()) return "Canceled.\n";
-                i++; updateProgress(i, total);
-                updateMessage("Processing " + i + "/" + total);
+    public CalculateFinesTask(OutputSink out, int pageSize) {
+        this.out = out;
+        this.pageSize = pageSize;
+    }
 
-                LocalDate borrow = br.getBorrowDate();
-                if (borrow == null) continue;
+    @Override
+    protected String call() {
+        phase("Calculating fines...");
+        LocalDate today = LocalDate.now();
+        // الدفتر بيتحدث تراكمياً (بس الإعارات اللي تغيّرت من آخر تشغيل)
+        FineService fines = FineService.shared();
+        fines.accrueToday();
+        if (isCancelled()) return "Canceled.\n";
 
-                long daysSince = ChronoUnit.DAYS.between(borrow, today);
-                long overdue = daysSince - 14;
-                if (overdue > 0) {
-                    countOverdue++;
-                    sb.append(String.format(
-                        "%s – Member: %s – Book: %s – Days Overdue: %d – Fine: $%.2f%n",
-                        today,
-                        br.getMember().getName(),
-                        br.getBook().getTitle(),
-                        overdue,
-                        (double) overdue
-                    ));
-                }
-            }
+        // بس المتأخرة (due_date < اليوم) من فهرس المواعيد، الأقدم أول
+        DueDateIndex index = DueDateIndex.shared();
+        index.ensureLoaded();
+        List<Integer> ids = DueDateIndex.ids(index.overdue(today));
+        if (ids.isEmpty()) {
+            finish("Done.");
+            return "No fines due.\n";
+        }
+
+        BorrowingRepo repo = new BorrowingRepo();
+        int total = ids.size();
+        int countOverdue = 0;
+        phase("Processed", "loans");
 
-            updateMessage("Done.");
-            return countOverdue == 0 ? "No fines due.\n" : sb.toString();
+        for (int from = 0; from < total; from += pageSize) {
+            if (isCancelled()) return "Canceled.\n";
+            List<Integer> page = ids.subList(from, Math.min(total, from + pageSize));
+            List<Borrowing> late = repo.findOpenByIdsWithBookAndMember(page);
+            Map<Integer, FineLedger> ledger = fines.finesFor(page);
 
-        } finally {
-            if (em != null && em.isOpen()) em.close();
+            StringBuilder sb = new StringBuilder(late.size() * 96);
+            for (Borrowing br : late) {
+                FineLedger f = ledger.get(br.getId());
+                if (f == null || f.getDays() <= 0) continue;
+                countOverdue++;
+                sb.append(String.format(
+                    "%s – Member: %s – Book: %s – Days Overdue: %d – Fine: %s%n",
+                    today,
+                    br.getMember().getName(),
+                    br.getBook().getTitle(),
+                    f.getDays(),
+                    FineService.formatCents(f.getAmountCents())
+                ));
+            }
+            out.append(sb.toString());
+            progress(Math.min(total, from + pageSize), total);
         }
+        // كل الطرق بتخلص بـ finish عشان الـ progress يوصل 100%
+        finish("Done.");
+        if (countOverdue == 0) return "No fines due.\n";
+
+        // مجموع المستحق (بيشمل غرامات إعارات رجعت متأخرة) من جدول الأرصدة
+        return String.format("%n%d overdue loans. Outstanding fines: %s across %d members%n",
+                countOverdue, FineService.formatCents(fines.totalOutstandingCents()), fines.countMembersWithFines());
     }
 }
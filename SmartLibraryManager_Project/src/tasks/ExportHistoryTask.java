@@ -0,0 +1,128 @@
+package tasks;
+
+import Repositories.BorrowingRepo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+// تصدير هيستوري الإعارات لملف (CSV أو JSON lines، مع gzip اختياري).
+// الصفوف بتنكتب مباشرة من الـ cursor للملف → الذاكرة ما بتكبر مع حجم الجدول
+public class ExportHistoryTask extends ProgressTask<Long> {
+
+    public enum Format { CSV, JSONL }
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final Path file;
+    private final Format format;
+    private final boolean gzip;
+    private final BorrowingRepo repo = new BorrowingRepo();
+
+    public ExportHistoryTask(Path file, Format format, boolean gzip) {
+        this.file = file;
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    // الصيغة من امتداد الملف: .csv / .jsonl (+ .gz)
+    public static ExportHistoryTask forFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        boolean gz = name.endsWith(".gz");
+        if (gz) name = name.substring(0, name.length() - 3);
+        Format f = (name.endsWith(".jsonl") || name.endsWith(".json")) ? Format.JSONL : Format.CSV;
+        return new ExportHistoryTask(file, f, gz);
+    }
+
+    @Override
+    protected Long call() throws IOException {
+        phase("Counting records...");
+        long total = Math.max(1, repo.countAll());
+        long[] written = {0};
+        phase("Exported", "records");
+
+        OutputStream raw = Files.newOutputStream(file);
+        if (gzip) raw = new GZIPOutputStream(raw, 64 * 1024);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(raw, StandardCharsets.UTF_8), 64 * 1024)) {
+            if (format == Format.CSV) {
+                out.write("id,book_id,book_title,member_id,member_name,borrow_date,return_date\n");
+            }
+            repo.streamHistory(FETCH_SIZE, row -> {
+                if (isCancelled()) return false;
+                try {
+                    if (format == Format.CSV) writeCsv(out, row);
+                    else writeJson(out, row);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                progress(++written[0], total);
+                return true;
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        // الإلغاء بيوقف الـ cursor بنص الطريق: ملف ناقص (أو .gz مش مكتمل) ما بنخلّيه كأنه تصدير
+        if (isCancelled()) {
+            Files.deleteIfExists(file);
+            updateMessage("Export canceled after " + written[0] + " records; partial file deleted.");
+            return written[0];
+        }
+
+        finish("Exported " + written[0] + " records.");
+        return written[0];
+    }
+
+    private static void writeCsv(Writer out, Object[] r) throws IOException {
+        for (int i = 0; i < r.length; i++) {
+            if (i > 0) out.write(',');
+            out.write(csv(r[i]));
+        }
+        out.write('\n');
+    }
+
+    private static void writeJson(Writer out, Object[] r) throws IOException {
+        out.write("{\"id\":" + r[0]
+                + ",\"bookId\":" + r[1]
+                + ",\"bookTitle\":" + json(r[2])
+                + ",\"memberId\":" + r[3]
+                + ",\"memberName\":" + json(r[4])
+                + ",\"borrowDate\":" + json(r[5])
+                + ",\"returnDate\":" + json(r[6])
+                + "}\n");
+    }
+
+    private static String csv(Object v) {
+        if (v == null) return "";
+        String s = v.toString();
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(Object v) {
+        if (v == null) return "null";
+        String s = v.toString();
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
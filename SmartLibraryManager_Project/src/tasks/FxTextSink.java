@@ -0,0 +1,60 @@
+package tasks;
+
+import javafx.application.Platform;
+
+import java.util.function.Consumer;
+
+// OutputSink للواجهة: النص بيتجمّع وبينكتب على الـ FX thread بدفعة وحدة لكل pulse
+// (runLater واحد لحد ما ينفّذ، مش واحد لكل صفحة). بعد maxChars الباقي بينعدّ بس
+// (سطور) عشان الـ TextArea ما يكبر بلا حدود مع ملايين الصفوف
+public final class FxTextSink implements OutputSink {
+
+    public static final int DEFAULT_MAX_CHARS = 500_000;
+
+    private final Consumer<String> target;
+    private final int maxChars;
+
+    private final StringBuilder pending = new StringBuilder();
+    private boolean scheduled;
+    private long accepted;
+    private long droppedLines;
+
+    public FxTextSink(Consumer<String> target) {
+        this(target, DEFAULT_MAX_CHARS);
+    }
+
+    public FxTextSink(Consumer<String> target, int maxChars) {
+        this.target = target;
+        this.maxChars = maxChars;
+    }
+
+    @Override
+    public synchronized void append(String text) {
+        if (text.isEmpty()) return;
+        if (accepted >= maxChars) {
+            droppedLines += text.chars().filter(c -> c == '\n').count();
+            return;
+        }
+        accepted += text.length();
+        pending.append(text);
+        if (!scheduled) {
+            scheduled = true;
+            Platform.runLater(this::flush);
+        }
+    }
+
+    // سطور ما انعرضت لأنها بعد الحد
+    public synchronized long getDroppedLines() {
+        return droppedLines;
+    }
+
+    private void flush() {
+        String text;
+        synchronized (this) {
+            text = pending.toString();
+            pending.setLength(0);
+            scheduled = false;
+        }
+        target.accept(text);
+    }
+}
@@ -1,70 +1,102 @@
 package tasks;
 
+import Repositories.BorrowingRepo;
+import Repositories.MemberRepo;
 import entities.Borrowing;
-import util.JpaUtil;
-import javafx.concurrent.Task;
+import services.DueDateIndex;
 
-import javax.persistence.EntityManager;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
 
-public class GenerateRemindersTask extends Task<String> {
+// تذكيرات الإعارات اللي موعدها خلال 48 ساعة، مجمّعة حسب العضو (بالاسم).
+// من فهرس المواعيد بناخد ids بس (إعارة → عضو) وأسماء الأعضاء، وبعدين الأعضاء بالترتيب
+// بينقسموا صفحات (~PAGE_SIZE إعارة) وكل صفحة بتنقرا وبتنكتب على الـ sink لحالها
+public class GenerateRemindersTask extends ProgressTask<String> {
+
+    public static final int PAGE_SIZE = 500;
+
+    private final OutputSink out;
+    private final int pageSize;
+
+    public GenerateRemindersTask(OutputSink out) {
+        this(out, PAGE_SIZE);
+    }
+
+    public GenerateRemindersTask(OutputSink out, int pageSize) {
+        this.out = out;
+        this.pageSize = pageSize;
+    }
+
     @Override
     protected String call() {
-        updateMessage("Generating reminders...");
-        EntityManager em = null;
-        try {
-            em = JpaUtil.getEntityManager();
+        phase("Generating reminders...");
+        LocalDate today = LocalDate.now();
+        // due within 48h  => dueDate ∈ [today, today+2] من فهرس المواعيد
+        LocalDate from = today;
+        LocalDate to   = today.plusDays(2);
 
-            LocalDate today = LocalDate.now();
-            // dueDate = borrowDate + 14
-            // due within 48h  => borrowDate ∈ [today-14, today-12]
-            LocalDate from = today.minusDays(14);
-            LocalDate to   = today.minusDays(12);
-
-            List<Borrowing> dueSoon = em.createQuery(
-                    "SELECT br FROM Borrowing br " +
-                    "WHERE br.returnDate IS NULL AND br.borrowDate BETWEEN :from AND :to " +
-                    "ORDER BY br.member.name ASC, br.borrowDate ASC",
-                    Borrowing.class)
-                .setParameter("from", from)
-                .setParameter("to", to)
-                .getResultList();
+        DueDateIndex index = DueDateIndex.shared();
+        index.ensureLoaded();
+        Map<Integer, List<Integer>> loansByMember = new HashMap<>();
+        int total = 0;
+        for (DueDateIndex.Entry e : index.dueBetween(from, to)) {
+            loansByMember.computeIfAbsent(e.memberId(), k -> new ArrayList<>()).add(e.borrowingId());
+            total++;
+        }
+        if (isCancelled()) return "Canceled.\n";
+        if (total == 0) {
+            finish("Done.");
+            return "No upcoming due items.\n";
+        }
 
-            if (isCancelled()) return "Canceled.\n";
-            if (dueSoon.isEmpty()) return "No upcoming due items.\n";
+        // group by member (ترتيب بالاسم)
+        Map<Integer, String> names = new MemberRepo().findNamesByIds(loansByMember.keySet());
+        List<Integer> members = new ArrayList<>(loansByMember.keySet());
+        members.sort(Comparator.comparing((Integer id) -> names.getOrDefault(id, ""))
+                               .thenComparing(Comparator.naturalOrder()));
 
-            // group by member
-            Map<String, List<Borrowing>> byMember = dueSoon.stream()
-                    .collect(Collectors.groupingBy(
-                            br -> br.getMember().getName(),
-                            TreeMap::new, Collectors.toList()));
+        BorrowingRepo repo = new BorrowingRepo();
+        List<Integer> pageMembers = new ArrayList<>();
+        List<Integer> pageLoans = new ArrayList<>();
+        int done = 0, reminders = 0, notified = 0;
+        phase("Processing", "loans");
+        for (Iterator<Integer> it = members.iterator(); it.hasNext(); ) {
+            Integer m = it.next();
+            pageMembers.add(m);
+            pageLoans.addAll(loansByMember.get(m));
+            if (pageLoans.size() < pageSize && it.hasNext()) continue;
 
-            StringBuilder out = new StringBuilder();
-            int i = 0, total = byMember.values().stream().mapToInt(List::size).sum();
-            for (var entry : byMember.entrySet()) {
-                out.append("Member: ").append(entry.getKey()).append("\n");
-                for (Borrowing br : entry.getValue()) {
-                    if (isCancelled()) return "Canceled.\n";
-                    i++; updateProgress(i, Math.max(total, 1));
-                    updateMessage("Processing " + i + "/" + total);
+            if (isCancelled()) return "Canceled.\n";
+            Map<Integer, List<Borrowing>> byMember = new HashMap<>();
+            for (Borrowing br : repo.findOpenByIdsWithBookAndMember(pageLoans)) {
+                byMember.computeIfAbsent(br.getMemberId(), k -> new ArrayList<>()).add(br);
+            }
 
-                    LocalDate due = br.getBorrowDate() == null
-                            ? null
-                            : br.getBorrowDate().plusDays(14);
-                    out.append("  • ")
-                       .append(br.getBook().getTitle())
-                       .append(" – Due: ").append(due)
-                       .append("\n");
+            StringBuilder sb = new StringBuilder(pageLoans.size() * 64);
+            for (Integer id : pageMembers) {
+                List<Borrowing> loans = byMember.get(id);
+                if (loans == null) continue;   // رجعت من وقت ما انقرى الفهرس
+                notified++;
+                sb.append("Member: ").append(loans.get(0).getMember().getName()).append("\n");
+                for (Borrowing br : loans) {
+                    reminders++;
+                    sb.append("  • ")
+                      .append(br.getBook().getTitle())
+                      .append(" – Due: ").append(br.getDueDate())
+                      .append("\n");
                 }
-                out.append("\n");
+                sb.append("\n");
             }
-            updateMessage("Done.");
-            return out.toString();
+            out.append(sb.toString());
 
-        } finally {
-            if (em != null && em.isOpen()) em.close();
+            done += pageLoans.size();
+            progress(done, total);
+            pageMembers.clear();
+            pageLoans.clear();
         }
+
+        finish("Done.");
+        return reminders == 0 ? "No upcoming due items.\n"
+                : reminders + " reminders for " + notified + " members.\n";
     }
 }
@@ -0,0 +1,160 @@
+package tasks;
+
+import Repositories.BookRepo;
+import entities.Book;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// استيراد كتالوج كامل من CSV (title,author,status) على دفعات.
+// الملف بيتقرا سطر سطر، وكل دفعة بتتخزن بـ transaction لحالها → الذاكرة ثابتة تقريباً
+public class ImportBooksTask extends ProgressTask<String> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final Path file;
+    private final int chunkSize;
+    private final BookRepo repo = new BookRepo();
+
+    public ImportBooksTask(Path file) {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ImportBooksTask(Path file, int chunkSize) {
+        this.file = file;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    protected String call() throws IOException {
+        phase("Loading existing titles...");
+        Set<String> titles = repo.findAllTitlesLower();
+
+        long totalBytes = Math.max(1, Files.size(file));
+        int lineNo = 0, inserted = 0, duplicates = 0, invalid = 0;
+        List<Book> chunk = new ArrayList<>(chunkSize);
+        phase("Importing", "bytes");
+
+        // التقدّم بالـ bytes اللي انقرت من الملف فعلاً (مش عدد الـ chars): العربي و CRLF بيوصلوا 100%
+        CountingInputStream bytes = new CountingInputStream(Files.newInputStream(file));
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(bytes, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                progress(bytes.count, totalBytes);
+                // ملفات Excel/Notepad بتبلش بـ BOM، بدونه الـ header ما بينعرف
+                if (lineNo == 1 && line.startsWith("\uFEFF")) line = line.substring(1);
+                if (line.isBlank()) continue;
+
+                List<String> cols = parseCsvLine(line);
+                if (lineNo == 1 && isHeader(cols)) continue;
+
+                Book b = toBook(cols);
+                if (b == null) { invalid++; continue; }
+                // التكرار بيتفحص على الموجود بالقاعدة وعلى اللي قبله بنفس الملف
+                if (!titles.add(b.getTitle().toLowerCase())) { duplicates++; continue; }
+
+                chunk.add(b);
+                if (chunk.size() >= chunkSize) {
+                    inserted += repo.insertBatch(chunk);
+                    chunk.clear();
+
+                    if (isCancelled()) {
+                        return summary(inserted, duplicates, invalid) + " (canceled)";
+                    }
+                }
+            }
+        }
+        inserted += repo.insertBatch(chunk);
+
+        String s = summary(inserted, duplicates, invalid);
+        finish(s);
+        return s;
+    }
+
+    private String summary(int inserted, int duplicates, int invalid) {
+        return "Imported: " + inserted + ", duplicates skipped: " + duplicates + ", invalid rows: " + invalid;
+    }
+
+    // بيعدّ الـ bytes اللي مرقت منه (الـ reader بيقرا لقدّام بـ buffer، فالعدّ سابق السطر شوي)
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    private static boolean isHeader(List<String> cols) {
+        return !cols.isEmpty() && cols.get(0).trim().equalsIgnoreCase("title");
+    }
+
+    // نفس قواعد BooksController.valid
+    private static Book toBook(List<String> cols) {
+        if (cols.size() < 2) return null;
+        String title = cols.get(0).trim();
+        String author = cols.get(1).trim();
+        String status = cols.size() > 2 ? cols.get(2).trim() : "";
+
+        if (title.isEmpty() || title.length() > 200) return null;
+        if (author.isEmpty() || author.length() > 120 || !author.matches("[\\p{L} .'-]+")) return null;
+
+        if (status.isEmpty() || status.equalsIgnoreCase("available")) status = "Available";
+        else if (status.equalsIgnoreCase("borrowed")) status = "Borrowed";
+        else return null;
+
+        Book b = new Book(title, author);
+        b.setStatus(status);
+        return b;
+    }
+
+    // CSV بسيط: فواصل + علامات تنصيص مزدوجة ("" داخل النص = ")
+    static List<String> parseCsvLine(String line) {
+        List<String> out = new ArrayList<>(3);
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') { cur.append('"'); i++; }
+                    else quoted = false;
+                } else {
+                    cur.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(ch);
+            }
+        }
+        out.add(cur.toString());
+        return out;
+    }
+}
@@ -1,26 +1,23 @@
 package tasks;
 
-import entities.Borrowing;
-import util.JpaUtil;
-import javafx.concurrent.Task;
-
-import javax.persistence.EntityManager;
+import Repositories.BorrowingRepo;
+import classes.Borrowing;
 import java.util.List;
 
-public class LoadHistoryTask extends Task<List<Borrowing>> {
+// تحميل أول صفحة من الهيستوري (الأحدث أولاً)؛ الباقي بيتحمّل مع السكرول
+public class LoadHistoryTask extends ProgressTask<List<Borrowing>> {
+
+    private final int limit;
+
+    public LoadHistoryTask(int limit) {
+        this.limit = limit;
+    }
+
     @Override
     protected List<Borrowing> call() {
-        updateMessage("Loading history...");
-        EntityManager em = null;
-        try {
-            em = JpaUtil.getEntityManager();
-            List<Borrowing> list = em.createQuery(
-                "SELECT b FROM Borrowing b ORDER BY b.borrowDate DESC", Borrowing.class
-            ).getResultList();
-            updateMessage("Loaded " + list.size() + " records.");
-            return list;
-        } finally {
-            if (em != null && em.isOpen()) em.close();
-        }
+        phase("Loading history...");
+        List<Borrowing> list = new BorrowingRepo().findHistoryPage(null, null, "id", false, limit);
+        finish("Loaded " + list.size() + " records.");
+        return list;
     }
 }
@@ -0,0 +1,9 @@
+package tasks;
+
+// مكان تنكتب فيه مخرجات المهام الطويلة أول بأول (صفحة صفحة) بدل String واحد كبير بالآخر.
+// بينادى من thread المهمة
+@FunctionalInterface
+public interface OutputSink {
+
+    void append(String text);
+}
@@ -0,0 +1,78 @@
+package tasks;
+
+import javafx.concurrent.Task;
+
+// أساس لكل المهام: progress(done, total) بتنادى قد ما بدك (حتى كل صف) بس الواجهة بتتحدث
+// بحد أقصى كل MIN_INTERVAL_MS أو كل 1% من الشغل (وبالآخر دايماً)، فالـ posts على الـ FX thread
+// ما بتصير هي الشغل. الرسالة فيها السرعة (وحدات/ثانية) والوقت المتبقي
+public abstract class ProgressTask<V> extends Task<V> {
+
+    public static final long MIN_INTERVAL_MS = 50;
+    private static final double MIN_STEP = 0.01;
+    private static final long MIN_INTERVAL_NANOS = MIN_INTERVAL_MS * 1_000_000;
+
+    private String label = "";
+    private String unit = "rows";
+    private long startNanos = System.nanoTime();
+    private long lastNanos;
+    private double lastFraction = -1;
+    private volatile long done;
+
+    // مرحلة جديدة: الرسالة بتطلع فوراً والسرعة بتنحسب من هون
+    protected void phase(String label) {
+        phase(label, "rows");
+    }
+
+    protected void phase(String label, String unit) {
+        this.label = label;
+        this.unit = unit;
+        this.startNanos = System.nanoTime();
+        this.lastNanos = 0;
+        this.lastFraction = -1;
+        this.done = 0;
+        updateMessage(label);
+    }
+
+    // total <= 0 → مش معروف (progress indeterminate، بس العدد والسرعة)
+    protected void progress(long done, long total) {
+        this.done = done;
+        long now = System.nanoTime();
+        double fraction = total > 0 ? Math.min(1.0, (double) done / total) : -1;
+        boolean last = total > 0 && done >= total;
+        if (!last && now - lastNanos < MIN_INTERVAL_NANOS && fraction - lastFraction < MIN_STEP) return;
+        lastNanos = now;
+        lastFraction = fraction;
+
+        if (total > 0) updateProgress(done, total);
+        else updateProgress(-1, 1);
+        updateMessage(describe(done, total, now));
+    }
+
+    // رسالة نهائية + 100%
+    protected void finish(String message) {
+        updateProgress(1, 1);
+        updateMessage(message);
+    }
+
+    // وحدات بالثانية من بداية المرحلة
+    public double getRate() {
+        double secs = (System.nanoTime() - startNanos) / 1e9;
+        return secs <= 0 ? 0 : done / secs;
+    }
+
+    private String describe(long done, long total, long now) {
+        double secs = (now - startNanos) / 1e9;
+        double rate = secs <= 0 ? 0 : done / secs;
+        StringBuilder sb = new StringBuilder(label).append(' ').append(done);
+        if (total > 0) sb.append('/').append(total);
+        sb.append(' ').append(unit);
+        if (rate > 0) {
+            sb.append(" · ").append(Math.round(rate)).append(' ').append(unit).append("/s");
+            if (total > 0 && done < total) {
+                long eta = Math.round((total - done) / rate);
+                sb.append(" · ETA ").append(eta / 60).append(':').append(String.format("%02d", eta % 60));
+            }
+        }
+        return sb.toString();
+    }
+}
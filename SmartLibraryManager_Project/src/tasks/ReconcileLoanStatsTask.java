@@ -0,0 +1,101 @@
+package tasks;
+
+import Repositories.MemberLoanStatsRepo;
+import Repositories.MemberLoanStatsRepo.Drift;
+import Repositories.MemberLoanStatsRepo.Reconciled;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// إعادة بناء عدّادات الأعضاء (MemberLoanStats) من جدول الإعارات وتقرير أي فرق.
+// الأعضاء بينقسموا chunks وكل chunk بـ transaction لحاله على thread من pool صغير
+// (أعضاء مختلفين ما بيقفلوا بعض، فالـ chunks ما بتستنى بعض)
+public class ReconcileLoanStatsTask extends ProgressTask<String> {
+
+    private static final Logger LOG = Logger.getLogger(ReconcileLoanStatsTask.class.getName());
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final int MAX_LISTED = 50;
+
+    private final int chunkSize;
+    private final int threads;
+    private final MemberLoanStatsRepo repo = new MemberLoanStatsRepo();
+
+    public ReconcileLoanStatsTask() {
+        // أقل من حجم الـ connection pool عشان الشاشة تضل تشتغل
+        this(DEFAULT_CHUNK_SIZE, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public ReconcileLoanStatsTask(int chunkSize, int threads) {
+        this.chunkSize = chunkSize;
+        this.threads = Math.max(1, threads);
+    }
+
+    @Override
+    protected String call() throws Exception {
+        phase("Reading members...");
+        List<Integer> ids = repo.findMemberIds();
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += chunkSize) {
+            chunks.add(ids.subList(i, Math.min(ids.size(), i + chunkSize)));
+        }
+
+        AtomicInteger n = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "LoanStatsReconcile-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        CompletionService<Reconciled> done = new ExecutorCompletionService<>(pool);
+
+        int checked = 0, created = 0;
+        phase("Checked", "members");
+        List<Drift> drift = new ArrayList<>();
+        try {
+            for (List<Integer> chunk : chunks) {
+                done.submit(() -> repo.reconcile(chunk));
+            }
+            for (int i = 1; i <= chunks.size(); i++) {
+                if (isCancelled()) return "Canceled.\n";
+                Reconciled r;
+                try {
+                    r = done.take().get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception) throw (Exception) ex.getCause();
+                    throw ex;
+                }
+                checked += r.checked();
+                created += r.created();
+                drift.addAll(r.drift());
+                progress(checked, ids.size());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int orphans = repo.deleteOrphans();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Checked %d members in %d chunks (%d threads): %d counters built, %d drifted, %d orphan rows removed.%n",
+                checked, chunks.size(), threads, created, drift.size(), orphans));
+        for (int i = 0; i < Math.min(drift.size(), MAX_LISTED); i++) {
+            sb.append("  ").append(drift.get(i)).append('\n');
+        }
+        if (drift.size() > MAX_LISTED) {
+            sb.append("  ... and ").append(drift.size() - MAX_LISTED).append(" more\n");
+        }
+        if (!drift.isEmpty()) {
+            LOG.warning("Loan counters drifted for " + drift.size() + " members (fixed)");
+        }
+
+        finish("Done.");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package util;
+
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+// profiler خفيف: بس بيعدّ cache hits/misses (L2 + query results cache) ويحوّلها لـ JpaMetrics
+final class CacheStatsProfiler extends SessionProfilerAdapter {
+
+    @Override
+    public void occurred(String operation, DatabaseQuery query, AbstractSession session) {
+        count(operation);
+    }
+
+    @Override
+    public void occurred(String operation, AbstractSession session) {
+        count(operation);
+    }
+
+    private static void count(String operation) {
+        if (SessionProfiler.CacheHits.equals(operation)) JpaMetrics.recordCache(true);
+        else if (SessionProfiler.CacheMisses.equals(operation)) JpaMetrics.recordCache(false);
+    }
+}
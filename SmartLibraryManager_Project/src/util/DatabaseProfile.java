@@ -0,0 +1,60 @@
+package util;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+// قاعدة البيانات اللي بيشتغل عليها الـ persistence unit، بتنختار بـ -Dlibrary.db=...
+//   mysql   (الافتراضي) → الإعدادات زي ما هي بـ persistence.xml
+//   h2      → H2 embedded على ملف (-Dlibrary.db.path=...، الافتراضي ~/.smartlibrary/library)
+//   h2-mem  → H2 بالذاكرة، بينمسح مع إغلاق البرنامج (تجارب / CI / benchmarks)
+// وضع H2 بيحتاج h2.jar على الـ classpath (1.4.x مجرّب مع EclipseLink 2.7): lib/h2-1.4.200.jar
+// جوّا javac.classpath، فالـ build بينسخه لـ dist/lib مع باقي المكتبات
+public enum DatabaseProfile {
+    MYSQL,
+    H2_FILE,
+    H2_MEM;
+
+    public static final String PROPERTY = "library.db";
+    public static final String PATH_PROPERTY = "library.db.path";
+
+    public static DatabaseProfile current() {
+        String v = System.getProperty(PROPERTY, "mysql").trim().toLowerCase();
+        switch (v) {
+            case "mysql": return MYSQL;
+            case "h2":    return H2_FILE;
+            case "h2-mem":
+            case "mem":   return H2_MEM;
+            default:
+                throw new IllegalArgumentException("Unknown " + PROPERTY + ": " + v + " (mysql | h2 | h2-mem)");
+        }
+    }
+
+    public boolean isEmbedded() {
+        return this != MYSQL;
+    }
+
+    // خصائص بتغطي على persistence.xml؛ MySQL ما بيغيّر إشي
+    Map<String, Object> overrides() {
+        Map<String, Object> p = new HashMap<>();
+        if (this == MYSQL) return p;
+
+        p.put("javax.persistence.jdbc.driver", "org.h2.Driver");
+        p.put("javax.persistence.jdbc.url", url());
+        p.put("javax.persistence.jdbc.user", "sa");
+        p.put("javax.persistence.jdbc.password", "");
+        p.put("eclipselink.target-database", "org.eclipse.persistence.platform.database.H2Platform");
+        return p;
+    }
+
+    private String url() {
+        if (this == H2_MEM) {
+            // DB_CLOSE_DELAY=-1: القاعدة بتضل موجودة لو الـ pool سكّر كل الاتصالات
+            return "jdbc:h2:mem:library;DB_CLOSE_DELAY=-1";
+        }
+        Path file = Paths.get(System.getProperty(PATH_PROPERTY,
+                Paths.get(System.getProperty("user.home"), ".smartlibrary", "library").toString()));
+        return "jdbc:h2:file:" + file.toAbsolutePath();
+    }
+}
@@ -0,0 +1,97 @@
+package util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// عدّادات بسيطة للـ pool وإعادة استخدام الـ EntityManager والـ L2 cache (thread-safe)
+public final class JpaMetrics {
+
+    private JpaMetrics() {}
+
+    private static final LongAdder acquires = new LongAdder();
+    private static final LongAdder poolHits = new LongAdder();
+    private static final LongAdder waitNanos = new LongAdder();
+
+    private static final LongAdder emOpened = new LongAdder();
+    private static final LongAdder emReused = new LongAdder();
+
+    private static final LongAdder txRetries = new LongAdder();
+
+    private static final LongAdder cacheHits = new LongAdder();
+    private static final LongAdder cacheMisses = new LongAdder();
+
+    static void recordAcquire(boolean hit, long nanos) {
+        acquires.increment();
+        if (hit) poolHits.increment();
+        waitNanos.add(nanos);
+    }
+
+    static void recordEntityManager(boolean reused) {
+        if (reused) emReused.increment();
+        else emOpened.increment();
+    }
+
+    static void recordRetry() {
+        txRetries.increment();
+    }
+
+    static void recordCache(boolean hit) {
+        if (hit) cacheHits.increment();
+        else cacheMisses.increment();
+    }
+
+    public static long connectionAcquires() { return acquires.sum(); }
+
+    // نسبة الطلبات اللي لقت اتصال جاهز بالـ pool
+    public static double poolHitRate() {
+        long n = acquires.sum();
+        return n == 0 ? 0.0 : (double) poolHits.sum() / n;
+    }
+
+    public static double averageWaitMillis() {
+        long n = acquires.sum();
+        return n == 0 ? 0.0 : waitNanos.sum() / 1_000_000.0 / n;
+    }
+
+    public static long totalWaitMillis() { return waitNanos.sum() / 1_000_000L; }
+
+    // نسبة استدعاءات الـ repos اللي انضمّت لـ unit of work موجود بدل فتح EntityManager جديد
+    public static double entityManagerReuseRate() {
+        long reused = emReused.sum();
+        long n = reused + emOpened.sum();
+        return n == 0 ? 0.0 : (double) reused / n;
+    }
+
+    // عدد مرات إعادة transaction بسبب تعارض optimistic locking
+    public static long transactionRetries() { return txRetries.sum(); }
+
+    public static long cacheHits() { return cacheHits.sum(); }
+
+    public static long cacheMisses() { return cacheMisses.sum(); }
+
+    // نسبة القراءات (find / استعلامات مخزّنة) اللي انخدمت من الـ cache بدون SQL
+    public static double cacheHitRate() {
+        long hits = cacheHits.sum();
+        long n = hits + cacheMisses.sum();
+        return n == 0 ? 0.0 : (double) hits / n;
+    }
+
+    public static void reset() {
+        acquires.reset();
+        poolHits.reset();
+        waitNanos.reset();
+        emOpened.reset();
+        emReused.reset();
+        txRetries.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    public static String summary() {
+        return String.format(
+                "Pool: %d acquires, hit rate %.1f%%, avg wait %.2f ms, total wait %d ms | EM reuse %.1f%%"
+                        + " | L2 cache: %d hits, %d misses (%.1f%%) | %d tx retries",
+                connectionAcquires(), poolHitRate() * 100, averageWaitMillis(), totalWaitMillis(),
+                entityManagerReuseRate() * 100, cacheHits(), cacheMisses(), cacheHitRate() * 100,
+                transactionRetries());
+    }
+}
@@ -0,0 +1,37 @@
+package util;
+
+import java.util.Map;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.server.ConnectionPool;
+import org.eclipse.persistence.sessions.server.ServerSession;
+
+// مُسجّل في persistence.xml (eclipselink.session.customizer)
+// يستبدل الـ pools الافتراضية بنسخ مُقاسة بعد ما EclipseLink يضبطها من الخصائص،
+// ويركّب profiler لعدّ cache hits/misses
+public class JpaSessionCustomizer implements SessionCustomizer {
+
+    @Override
+    public void customize(Session session) {
+        if (!(session instanceof ServerSession)) return;
+        ServerSession ss = (ServerSession) session;
+
+        for (Map.Entry<String, ConnectionPool> e : ss.getConnectionPools().entrySet()) {
+            ConnectionPool p = e.getValue();
+            if (p.getClass() == ConnectionPool.class) {
+                e.setValue(new MeteredConnectionPool(p, ss));
+            }
+        }
+
+        // ReadConnectionPool (shared) نتركه زي ما هو
+        ConnectionPool read = ss.getReadConnectionPool();
+        if (read != null && read.getClass() == ConnectionPool.class) {
+            ss.setReadConnectionPool(new MeteredConnectionPool(read, ss));
+        }
+
+        if (ss.getProfiler() == null) {
+            ss.setProfiler(new CacheStatsProfiler());
+        }
+    }
+}
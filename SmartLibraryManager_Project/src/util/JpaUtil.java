@@ -1,25 +1,238 @@
 package util;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+
+import org.eclipse.persistence.jpa.JpaHelper;
 
 public class JpaUtil {
 
-    private static final EntityManagerFactory emf;
+    private static final DatabaseProfile profile = DatabaseProfile.current();
+
+    // الـ EMF بيجهز بالخلفية (deploy + اتصال + SchemaUpgrade)؛ أي استدعاء للقاعدة بيستنى هذا الـ future.
+    // null = لسا ما بلّش أو انسكّر بـ close() (الاستدعاء الجاي بيبني EMF جديد)
+    private static final AtomicReference<CompletableFuture<EntityManagerFactory>> READY = new AtomicReference<>();
+
+    // الـ EntityManager المربوط بالـ thread الحالي (unit of work)
+    private static final ThreadLocal<EntityManager> CURRENT = new ThreadLocal<>();
+
+    public static DatabaseProfile profile() {
+        return profile;
+    }
+
+    // بدء تجهيز الـ EMF على thread بالخلفية (مرة وحدة لحد close()). بينادى من start() قبل ما تظهر شاشة الدخول؛
+    // لو ما انندهت، أول استدعاء للقاعدة بيبدأه
+    public static CompletableFuture<EntityManagerFactory> startAsync() {
+        while (true) {
+            CompletableFuture<EntityManagerFactory> ready = READY.get();
+            if (ready != null) return ready;
+            CompletableFuture<EntityManagerFactory> fresh = new CompletableFuture<>();
+            if (READY.compareAndSet(null, fresh)) {
+                Thread t = new Thread(() -> bootstrap(fresh), "JpaBootstrap");
+                t.setDaemon(true);
+                t.start();
+                return fresh;
+            }
+        }
+    }
+
+    public static boolean isReady() {
+        return readyFactory() != null;
+    }
+
+    // الـ EMF لو جاهز، وإلا null (بدون ما نبلّش bootstrap)
+    private static EntityManagerFactory readyFactory() {
+        CompletableFuture<EntityManagerFactory> ready = READY.get();
+        if (ready == null || !ready.isDone() || ready.isCompletedExceptionally()) return null;
+        return ready.join();
+    }
+
+    private static void bootstrap(CompletableFuture<EntityManagerFactory> ready) {
+        try {
+            EntityManagerFactory f = StartupLog.phase("EMF created (" + profile + ")", () ->
+                    Persistence.createEntityManagerFactory("SmartLibraryManager_ProjectPU", profile.overrides()));
+            // EclipseLink بيعمل deploy + login مع أول EntityManager، وهذا بيصير جوّا SchemaUpgrade
+            StartupLog.phase("ORM deploy + schema upgrade", () -> SchemaUpgrade.run(f));
+            ready.complete(f);
+            StartupLog.mark("JPA ready");
+        } catch (Throwable ex) {
+            ready.completeExceptionally(ex);
+        }
+    }
 
-    static {
-        emf = Persistence.createEntityManagerFactory("SmartLibraryManager_ProjectPU");
+    private static EntityManagerFactory emf() {
+        try {
+            return startAsync().join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new PersistenceException("JPA bootstrap failed", cause);
+        }
     }
 
     public static EntityManager getEntityManager() {
-        return emf.createEntityManager();
+        return emf().createEntityManager();
     }
 
-    public static void close() {
-        if (emf.isOpen()) {
-            emf.close();
+    // الـ EntityManager الحالي إذا في unit of work شغّال على هذا الـ thread، وإلا null
+    public static EntityManager currentEntityManager() {
+        return CURRENT.get();
+    }
+
+    // تنفيذ عمل داخل transaction واحدة.
+    // لو في unit of work مفتوح على نفس الـ thread → ننضم له (نفس الـ EM ونفس الـ transaction)
+    public static <T> T inTransaction(Function<EntityManager, T> work) {
+        EntityManager em = CURRENT.get();
+        if (em != null) {
+            JpaMetrics.recordEntityManager(true);
+            EntityTransaction tx = em.getTransaction();
+            if (tx.isActive()) {
+                return work.apply(em);
+            }
+            // EM مفتوح للقراءة فقط → نبدأ transaction ونقفلها هنا
+            return runTx(em, work);
+        }
+
+        JpaMetrics.recordEntityManager(false);
+        em = emf().createEntityManager();
+        CURRENT.set(em);
+        try {
+            return runTx(em, work);
+        } finally {
+            CURRENT.remove();
+            em.close();
         }
     }
-}
 
+    // ====== retry على تعارض optimistic locking ======
+    // العمل بيتعاد من الأول على EntityManager جديد (لازم يقرأ الحالة من جديد، مش يعمل merge لنسخة قديمة).
+    // جوّا unit of work أكبر ما بنقدر نعيد لحالنا → الاستثناء بيطلع للي فتح الـ transaction
+
+    public static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 200;
+
+    public static <T> T inTransactionWithRetry(Function<EntityManager, T> work) {
+        if (CURRENT.get() != null) return inTransaction(work);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return inTransaction(work);
+            } catch (RuntimeException ex) {
+                if (attempt >= MAX_ATTEMPTS || !isOptimisticLockFailure(ex)) throw ex;
+                JpaMetrics.recordRetry();
+                backoff(attempt);
+            }
+        }
+    }
+
+    // OptimisticLockException ممكن يوصل مباشرة (flush) أو ملفوف بـ RollbackException (commit)
+    public static boolean isOptimisticLockFailure(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException
+                    || t instanceof org.eclipse.persistence.exceptions.OptimisticLockException) {
+                return true;
+            }
+            if (t.getCause() == t) break;
+        }
+        return false;
+    }
+
+    // 10, 20, 40, 80 ms (سقف 200) + jitter عشان العملاء المتعارضين ما يرجعوا بنفس اللحظة
+    private static void backoff(int attempt) {
+        long max = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        try {
+            Thread.sleep(max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException("Interrupted while retrying", ie);
+        }
+    }
+
+    public static void runInTransaction(Consumer<EntityManager> work) {
+        inTransaction(em -> {
+            work.accept(em);
+            return null;
+        });
+    }
+
+    // قراءة بدون transaction؛ تعيد استخدام الـ EM الحالي إن وُجد
+    public static <T> T read(Function<EntityManager, T> work) {
+        EntityManager em = CURRENT.get();
+        if (em != null) {
+            JpaMetrics.recordEntityManager(true);
+            return work.apply(em);
+        }
+
+        JpaMetrics.recordEntityManager(false);
+        em = emf().createEntityManager();
+        CURRENT.set(em);
+        try {
+            return work.apply(em);
+        } finally {
+            CURRENT.remove();
+            em.close();
+        }
+    }
+
+    private static <T> T runTx(EntityManager em, Function<EntityManager, T> work) {
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            T result = work.apply(em);
+            tx.commit();
+            return result;
+        } catch (RuntimeException ex) {
+            if (tx.isActive()) tx.rollback();
+            throw ex;
+        }
+    }
+
+    // مسح L2 cache لنوع معيّن + نتائج الاستعلامات المخزّنة عليه.
+    // لازم بعد أي كتابة ما بتمر عبر الـ persistence context (JDBC مباشر، UPDATE/DELETE جماعي)
+    public static void evict(Class<?> type) {
+        EntityManagerFactory f = readyFactory();
+        if (f == null) return;
+        f.getCache().evict(type);
+        JpaHelper.getServerSession(f).getIdentityMapAccessor().invalidateQueryCache(type);
+    }
+
+    // نفس الإشي لصف واحد (نتائج الاستعلامات على النوع بتنمسح كلها)
+    public static void evict(Class<?> type, Object id) {
+        EntityManagerFactory f = readyFactory();
+        if (f == null) return;
+        f.getCache().evict(type, id);
+        JpaHelper.getServerSession(f).getIdentityMapAccessor().invalidateQueryCache(type);
+    }
+
+    // لو الـ bootstrap لسا شغّال بنسكّر أول ما يخلص. بعدها startAsync()/getEntityManager() بيبنوا EMF جديد
+    // (مثلاً test class تانية بنفس الـ JVM)
+    public static void close() {
+        CURRENT.remove();
+        CompletableFuture<EntityManagerFactory> ready = READY.getAndSet(null);
+        if (ready == null) return;
+        ready.thenAccept(f -> {
+            if (!f.isOpen()) return;
+            // h2-mem بينمسح مع الإغلاق؛ بدون هيك القاعدة (DB_CLOSE_DELAY=-1) بتضل بالـ JVM والـ EMF الجاي بيلاقي بياناتها
+            if (profile == DatabaseProfile.H2_MEM) {
+                EntityManager em = f.createEntityManager();
+                try {
+                    runTx(em, e -> e.createNativeQuery("DROP ALL OBJECTS").executeUpdate());
+                } finally {
+                    em.close();
+                }
+            }
+            f.close();
+        });
+    }
+}
@@ -0,0 +1,29 @@
+package util;
+
+import org.eclipse.persistence.internal.databaseaccess.Accessor;
+import org.eclipse.persistence.sessions.server.ConnectionPool;
+import org.eclipse.persistence.sessions.server.ServerSession;
+
+// نسخة من ConnectionPool تقيس زمن الانتظار ونسبة الإصابة (اتصال جاهز بدون بناء/انتظار)
+public class MeteredConnectionPool extends ConnectionPool {
+
+    public MeteredConnectionPool(ConnectionPool src, ServerSession owner) {
+        super(src.getName(), src.getLogin(),
+              src.getInitialNumberOfConnections(),
+              src.getMinNumberOfConnections(),
+              src.getMaxNumberOfConnections(),
+              owner);
+        setWaitTimeout(src.getWaitTimeout());
+    }
+
+    @Override
+    public synchronized Accessor acquireConnection() {
+        boolean hit = !getConnectionsAvailable().isEmpty();
+        long t0 = System.nanoTime();
+        try {
+            return super.acquireConnection();
+        } finally {
+            JpaMetrics.recordAcquire(hit, System.nanoTime() - t0);
+        }
+    }
+}
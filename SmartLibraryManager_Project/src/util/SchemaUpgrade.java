@@ -0,0 +1,105 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.metamodel.EntityType;
+
+import entities.Borrowing;
+
+// ترقية قاعدة موجودة بعد ما EclipseLink يمدّ الجداول (create-or-extend-tables):
+// تعبئة الأعمدة الجديدة + إنشاء الـ indexes المعرّفة بـ @Table(indexes) إذا مش موجودة
+final class SchemaUpgrade {
+
+    private static final Logger LOG = Logger.getLogger(SchemaUpgrade.class.getName());
+
+    private SchemaUpgrade() {}
+
+    static void run(EntityManagerFactory emf) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            backfill(em);
+            ensureIndexes(emf, em.unwrap(Connection.class));
+            tx.commit();
+        } catch (RuntimeException ex) {
+            if (tx.isActive()) tx.rollback();
+            LOG.log(Level.WARNING, "Schema upgrade failed", ex);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void backfill(EntityManager em) {
+        int n = em.createQuery(
+                "UPDATE User u SET u.emailNormalized = LOWER(TRIM(u.email)) WHERE u.emailNormalized IS NULL")
+                .executeUpdate();
+        if (n > 0) LOG.info("Backfilled email_normalized for " + n + " users");
+
+        // عمود version انضاف لجداول فيها بيانات → NULL، والـ optimistic locking بيحتاج رقم
+        for (String table : new String[] { "books", "members", "borrowings" }) {
+            int v = em.createNativeQuery("UPDATE " + table + " SET version = 0 WHERE version IS NULL")
+                      .executeUpdate();
+            if (v > 0) LOG.info("Backfilled version for " + v + " rows in " + table);
+        }
+
+        // due_date انضاف بعد ما كان في إعارات → borrow_date + مدة الإعارة (جمع التواريخ مختلف بين القواعد)
+        String due = JpaUtil.profile().isEmbedded()
+                ? "DATEADD('DAY', " + Borrowing.LOAN_DAYS + ", borrow_date)"
+                : "DATE_ADD(borrow_date, INTERVAL " + Borrowing.LOAN_DAYS + " DAY)";
+        int d = em.createNativeQuery("UPDATE borrowings SET due_date = " + due + " WHERE due_date IS NULL")
+                  .executeUpdate();
+        if (d > 0) LOG.info("Backfilled due_date for " + d + " borrowings");
+    }
+
+    private static void ensureIndexes(EntityManagerFactory emf, Connection c) {
+        for (EntityType<?> et : emf.getMetamodel().getEntities()) {
+            Table t = et.getJavaType().getAnnotation(Table.class);
+            if (t == null || t.indexes().length == 0) continue;
+            try {
+                Set<String> existing = existingIndexes(c, t.name());
+                for (Index idx : t.indexes()) {
+                    if (existing.contains(idx.name().toLowerCase())) continue;
+                    String ddl = "CREATE " + (idx.unique() ? "UNIQUE " : "") + "INDEX " + idx.name()
+                            + " ON " + t.name() + " (" + idx.columnList() + ")";
+                    try (Statement st = c.createStatement()) {
+                        st.executeUpdate(ddl);
+                        LOG.info("Created index: " + ddl);
+                    } catch (SQLException ex) {
+                        LOG.log(Level.WARNING, "Couldn't create index " + idx.name() + ": " + ex.getMessage());
+                    }
+                }
+            } catch (SQLException ex) {
+                LOG.log(Level.WARNING, "Couldn't read indexes of " + t.name(), ex);
+            }
+        }
+    }
+
+    // بعض القواعد بتخزن الأسماء uppercase (H2/Derby) وبعضها lowercase (MySQL)
+    private static Set<String> existingIndexes(Connection c, String table) throws SQLException {
+        DatabaseMetaData md = c.getMetaData();
+        Set<String> names = new HashSet<>();
+        for (String name : new String[] { table, table.toUpperCase() }) {
+            try (ResultSet rs = md.getIndexInfo(c.getCatalog(), null, name, false, true)) {
+                while (rs.next()) {
+                    String n = rs.getString("INDEX_NAME");
+                    if (n != null) names.add(n.toLowerCase());
+                }
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,40 @@
+package util;
+
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+// توقيت مراحل تشغيل البرنامج (من أول ما انحمّل هذا الكلاس = بداية start تقريباً)
+public final class StartupLog {
+
+    private static final Logger LOG = Logger.getLogger(StartupLog.class.getName());
+    private static final long T0 = System.nanoTime();
+
+    private StartupLog() {}
+
+    // نقطة زمنية: "وصلنا هون بعد X ms"
+    public static void mark(String what) {
+        LOG.info(String.format("[startup] %-32s at %5d ms  (%s)", what, sinceStart(), Thread.currentThread().getName()));
+    }
+
+    // مرحلة كاملة: مدتها + متى خلصت
+    public static <T> T phase(String name, Supplier<T> work) {
+        long t = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            LOG.info(String.format("[startup] %-32s took %5d ms, done at %5d ms  (%s)",
+                    name, (System.nanoTime() - t) / 1_000_000, sinceStart(), Thread.currentThread().getName()));
+        }
+    }
+
+    public static void phase(String name, Runnable work) {
+        phase(name, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    private static long sinceStart() {
+        return (System.nanoTime() - T0) / 1_000_000;
+    }
+}
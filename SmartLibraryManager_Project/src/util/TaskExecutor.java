@@ -0,0 +1,241 @@
+package util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// executor واحد للبرنامج كله بدل new Thread لكل مهمة. كل Lane إلها workers وqueue محدود
+// وسياسة رفض لحالها، فمهمة batch طويلة ما بتأخر تحميل الشاشة (interactive).
+// بيختار بـ -Dlibrary.tasks=pool|virtual (virtual = virtual threads على JDK 21+، وإلا pool)
+// وعدد الـ workers بـ -Dlibrary.tasks.interactive=N و -Dlibrary.tasks.write=N و -Dlibrary.tasks.batch=N.
+// الأرقام (queue، شغّال، وقت الانتظار والتشغيل) بـ snapshot()، وبتنكتب باللوج وقت shutdown
+public final class TaskExecutor {
+
+    private static final Logger LOG = Logger.getLogger(TaskExecutor.class.getName());
+
+    public static final String PROPERTY = "library.tasks";
+
+    public enum Rejection {
+        ABORT,            // RejectedExecutionException للّي طلب (الواجهة بتقول "busy")
+        DISCARD_OLDEST    // أقدم مهمة بالـ queue بتنلغى (تحميلات قديمة ما عاد حدا بستناها)
+    }
+
+    public enum Lane {
+        // تحميل شاشات وتقارير: أولوية أعلى، القديم بينرمى لو الـ queue امتلى
+        INTERACTIVE(2, 32, Rejection.DISCARD_OLDEST, Thread.NORM_PRIORITY + 1),
+        // حفظ/حذف/إعارة/إرجاع من الشاشات: ما بينرمى أبداً، لو امتلى الطلب الجديد بينرفض (busy)
+        WRITE(2, 16, Rejection.ABORT, Thread.NORM_PRIORITY + 1),
+        // غرامات، تذكيرات، تصدير/استيراد، reconcile
+        BATCH(2, 8, Rejection.ABORT, Thread.NORM_PRIORITY - 1);
+
+        final int defaultThreads;
+        final int queueCapacity;
+        final Rejection rejection;
+        final int threadPriority;
+
+        Lane(int defaultThreads, int queueCapacity, Rejection rejection, int threadPriority) {
+            this.defaultThreads = defaultThreads;
+            this.queueCapacity = queueCapacity;
+            this.rejection = rejection;
+            this.threadPriority = threadPriority;
+        }
+
+        int threads() {
+            return Math.max(1, Integer.getInteger(PROPERTY + "." + name().toLowerCase(), defaultThreads));
+        }
+    }
+
+    public record LaneStats(Lane lane, int threads, int queued, int running, long completed, long rejected,
+                            double avgWaitMs, double avgRunMs, double maxRunMs) {
+        @Override
+        public String toString() {
+            return String.format("%s: %d threads, queued %d, running %d, done %d, rejected %d, "
+                            + "wait avg %.1f ms, run avg %.1f ms / max %.1f ms",
+                    lane, threads, queued, running, completed, rejected, avgWaitMs, avgRunMs, maxRunMs);
+        }
+    }
+
+    private static final TaskExecutor SHARED = new TaskExecutor(
+            "virtual".equalsIgnoreCase(System.getProperty(PROPERTY, "pool").trim()));
+
+    public static TaskExecutor shared() {
+        return SHARED;
+    }
+
+    private final boolean virtual;
+    private final Map<Lane, LanePool> pools = new EnumMap<>(Lane.class);
+
+    private TaskExecutor(boolean wantVirtual) {
+        ThreadFactory vf = wantVirtual ? virtualFactory() : null;
+        if (wantVirtual && vf == null) LOG.info("Virtual threads need JDK 21+; using platform threads");
+        this.virtual = vf != null;
+        for (Lane lane : Lane.values()) pools.put(lane, new LanePool(lane, vf));
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    // javafx.concurrent.Task (أو أي Runnable). بيرمي RejectedExecutionException لو الـ lane مليان
+    // وسياستها ABORT، أو بعد shutdown
+    public void execute(Lane lane, Runnable task) {
+        pools.get(lane).submit(task);
+    }
+
+    // لـ CompletableFuture.runAsync(..., executor(lane))
+    public Executor executor(Lane lane) {
+        return r -> execute(lane, r);
+    }
+
+    public List<LaneStats> snapshot() {
+        List<LaneStats> out = new ArrayList<>();
+        for (LanePool p : pools.values()) out.add(p.stats());
+        return out;
+    }
+
+    // المهام اللي لسا بالـ queue بتنلغى، والشغّالة بتاخد فرصة تخلص (بعدين interrupt)
+    public void shutdown(long timeout, TimeUnit unit) {
+        for (LanePool p : pools.values()) p.executor.shutdown();
+        for (LanePool p : pools.values()) {
+            for (Runnable r : p.executor.getQueue().toArray(new Runnable[0])) {
+                if (p.executor.remove(r)) ((Job) r).cancelQueued();
+            }
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (LanePool p : pools.values()) {
+            try {
+                long left = deadline - System.nanoTime();
+                if (!p.executor.awaitTermination(Math.max(0, left), TimeUnit.NANOSECONDS)) p.executor.shutdownNow();
+            } catch (InterruptedException ex) {
+                p.executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (LaneStats s : snapshot()) LOG.info("[tasks] " + s);
+    }
+
+    // ====== lane ======
+
+    private static final class LanePool {
+        final Lane lane;
+        final int threads;
+        final ThreadPoolExecutor executor;
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+        final AtomicLong runNanos = new AtomicLong();
+        final AtomicLong maxRunNanos = new AtomicLong();
+
+        LanePool(Lane lane, ThreadFactory virtualFactory) {
+            this.lane = lane;
+            this.threads = lane.threads();
+            AtomicInteger n = new AtomicInteger();
+            ThreadFactory platform = r -> {
+                Thread t = new Thread(r, "Task-" + lane.name().toLowerCase() + "-" + n.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(lane.threadPriority);
+                return t;
+            };
+            this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(lane.queueCapacity),
+                    virtualFactory != null ? virtualFactory : platform,
+                    rejectionHandler());
+            // workers بيموتوا لما البرنامج فاضي (virtual: thread جديد تقريباً لكل مهمة)
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        void submit(Runnable task) {
+            executor.execute(new Job(this, task));
+        }
+
+        private RejectedExecutionHandler rejectionHandler() {
+            return (r, ex) -> {
+                rejected.incrementAndGet();
+                if (ex.isShutdown()) {
+                    throw new RejectedExecutionException("Task executor is shut down");
+                }
+                if (lane.rejection == Rejection.DISCARD_OLDEST) {
+                    Runnable oldest = ex.getQueue().poll();
+                    if (oldest != null) ((Job) oldest).cancelQueued();
+                    ex.execute(r);
+                    return;
+                }
+                throw new RejectedExecutionException(lane + " queue is full (" + lane.queueCapacity + " waiting)");
+            };
+        }
+
+        LaneStats stats() {
+            long done = completed.get();
+            return new LaneStats(lane, threads, executor.getQueue().size(), running.get(), done, rejected.get(),
+                    done == 0 ? 0 : waitNanos.get() / 1e6 / done,
+                    done == 0 ? 0 : runNanos.get() / 1e6 / done,
+                    maxRunNanos.get() / 1e6);
+        }
+    }
+
+    // غلاف بيقيس وقت الانتظار والتشغيل
+    private static final class Job implements Runnable {
+        final LanePool pool;
+        final Runnable task;
+        final long queuedAt = System.nanoTime();
+
+        Job(LanePool pool, Runnable task) {
+            this.pool = pool;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            pool.waitNanos.addAndGet(start - queuedAt);
+            pool.running.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                long took = System.nanoTime() - start;
+                pool.running.decrementAndGet();
+                pool.completed.incrementAndGet();
+                pool.runNanos.addAndGet(took);
+                pool.maxRunNanos.accumulateAndGet(took, Math::max);
+            }
+        }
+
+        // مهمة انشالت من الـ queue قبل ما تشتغل: javafx Task بتصير CANCELLED (الواجهة بتفك القفل)
+        void cancelQueued() {
+            if (task instanceof Future) ((Future<?>) task).cancel(false);
+        }
+    }
+
+    // Thread.ofVirtual().name("Task-v-", 0).factory() بدون ما نحتاج JDK 21 للـ compile
+    private static ThreadFactory virtualFactory() {
+        try {
+            MethodHandles.Lookup l = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object b = l.findStatic(Thread.class, "ofVirtual", MethodType.methodType(builder)).invoke();
+            MethodHandle name = l.findVirtual(builder, "name",
+                    MethodType.methodType(builder, String.class, long.class));
+            b = name.invoke(b, "Task-v-", 0L);
+            return (ThreadFactory) l.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class))
+                                    .invoke(b);
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package Repositories;
+
+import entities.Book;
+import entities.Borrowing;
+import entities.Member;
+import entities.User;
+import org.eclipse.persistence.internal.databaseaccess.DatabaseCall;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import util.JpaUtil;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// EXPLAIN على H2 بالذاكرة للـ SQL الحقيقي اللي بتطلّعه الـ repos: الإعارات (حسب العضو، المتأخرات،
+// مدى التقارير) وتسجيل الدخول بالإيميل لازم يمشوا على الـ indexes المعرّفة بـ @Table مش full scan
+public class QueryPlanTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private static SqlCapture sql;
+    private static Connection db;
+    private static final List<Integer> memberIds = new ArrayList<>();
+
+    @BeforeClass
+    public static void seed() throws SQLException {
+        assertTrue("run on the embedded profile (-Dlibrary.db=h2-mem)", JpaUtil.profile().isEmbedded());
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 200; i++) books.add(new Book("Title " + i, "Author " + (i % 30)));
+        new BookRepo().saveAll(books);
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Member m = new Member();
+            m.setName("Member " + i);
+            m.setContact("member" + i + "@example.com");
+            members.add(m);
+        }
+        new MemberRepo().saveAll(members);
+        for (Member m : members) memberIds.add(m.getId());
+
+        // نص الإعارات مرجّعة، والتواريخ موزعة على 120 يوم فبعضها متأخر
+        List<Borrowing> loans = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Borrowing br = new Borrowing(books.get(i % books.size()), members.get(i % members.size()),
+                    TODAY.minusDays(i % 120));
+            if (i % 2 == 0) br.setReturnDate(TODAY);
+            loans.add(br);
+        }
+        new BorrowingRepo().saveAll(loans);
+
+        UserRepo users = new UserRepo();
+        for (int i = 0; i < 50; i++) users.add(new User("First" + i, "Last" + i, "User" + i + "@Example.com", "x"));
+
+        sql = SqlCapture.install();
+        String url = JpaUtil.read(em -> (String) em.getEntityManagerFactory().getProperties().get("javax.persistence.jdbc.url"));
+        db = DriverManager.getConnection(url, "sa", "");
+        // إحصائيات الجداول للـ optimizer بعد التعبئة
+        try (Statement st = db.createStatement()) {
+            st.execute("ANALYZE");
+        }
+    }
+
+    @AfterClass
+    public static void close() throws SQLException {
+        if (db != null) db.close();
+        JpaUtil.close();
+    }
+
+    @Test
+    public void openLoansPerMemberUseMemberReturnIndex() throws SQLException {
+        // عدّاد الإعارات النشطة (حد الإعارة + reconcile)
+        assertUsesIndex(() -> JpaUtil.read(em -> MemberLoanStatsRepo.compute(em, memberIds.subList(0, 5))),
+                "IDX_BORROWINGS_MEMBER_RETURN");
+    }
+
+    @Test
+    public void overdueUsesReturnDueIndex() throws SQLException {
+        BorrowingRepo repo = new BorrowingRepo();
+        assertUsesIndex(() -> repo.findOverdue(TODAY), "IDX_BORROWINGS_RETURN_DUE");
+        assertUsesIndex(() -> repo.findOverdueWithBookAndMember(TODAY, null, null, null),
+                "IDX_BORROWINGS_RETURN_DUE");
+        // تقرير المتأخرات مع مدى الإعارة: range على due_date أو على borrow_date، الاتنين بيبلشوا بـ return_date
+        assertUsesIndex(() -> repo.findOverdueWithBookAndMember(TODAY, TODAY.minusDays(60), TODAY, "title 1"),
+                "IDX_BORROWINGS_RETURN_DUE", "IDX_BORROWINGS_RETURN_BORROW");
+    }
+
+    @Test
+    public void activeRangeUsesReturnBorrowIndex() throws SQLException {
+        assertUsesIndex(() -> new BorrowingRepo().findActiveByRange(TODAY.minusDays(30), TODAY),
+                "IDX_BORROWINGS_RETURN_BORROW");
+    }
+
+    @Test
+    public void reportRangeUsesBorrowDateIndex() throws SQLException {
+        BorrowingRepo repo = new BorrowingRepo();
+        assertUsesIndex(() -> repo.countStats(TODAY.minusDays(7), TODAY, null),
+                "IDX_BORROWINGS_BORROW_DATE");
+        assertUsesIndex(() -> repo.findMemberActivity(TODAY.minusDays(7), TODAY, null, null),
+                "IDX_BORROWINGS_BORROW_DATE");
+    }
+
+    @Test
+    public void loginEmailUsesNormalizedEmailIndex() throws SQLException {
+        // نفس استعلام LoginController
+        assertUsesIndex(() -> JpaUtil.read(em -> em.createQuery(
+                        "SELECT u FROM User u WHERE u.emailNormalized = :email", User.class)
+                    .setParameter("email", User.normalizeEmail(" user7@example.COM "))
+                    .getResultList()),
+                "IDX_USERS_EMAIL_NORMALIZED");
+    }
+
+    // كل statement نفّذه lookup لازم الـ plan تبعه يقرا الجدول الأساسي من وحدة من الـ indexes
+    private static void assertUsesIndex(Runnable lookup, String... anyOf) throws SQLException {
+        List<DatabaseCall> calls = sql.during(lookup);
+        assertFalse("lookup ran no SQL", calls.isEmpty());
+        for (DatabaseCall call : calls) {
+            String plan = explain(call).toUpperCase();
+            boolean used = false;
+            for (String index : anyOf) used |= plan.contains("/* PUBLIC." + index + ":");
+            assertTrue(String.join(" / ", anyOf) + " not used:\n" + plan, used);
+        }
+    }
+
+    private static String explain(DatabaseCall call) throws SQLException {
+        try (PreparedStatement ps = db.prepareStatement("EXPLAIN " + call.getSQLString())) {
+            int i = 1;
+            for (Object p : call.getParameters()) ps.setObject(i++, p);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package Repositories;
+
+import entities.Book;
+import entities.Borrowing;
+import entities.Member;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+import services.FineService;
+import util.JpaUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// كل تقرير (والمهام اللي بتحمّل تفاصيل الإعارات) لازم يشتغل بعدد SQL ثابت مهما زادت الصفوف:
+// بنعدّ الـ statements على بيانات صغيرة، بنضيف إعارات، وبنعدّ مرة تانية. N+1 بيبيّن كفرق بين العدّين.
+// الاستعلامات بالـ ids (IN :ids) بتنقسم دفعات batchSize، فهي statement لكل دفعة مش لكل صف
+public class ReportQueryCountTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final LocalDate FROM = TODAY.minusDays(90);
+
+    private static SqlCapture sql;
+    private static int seq;
+
+    private final BorrowingRepo repo = new BorrowingRepo();
+
+    @BeforeClass
+    public static void seed() {
+        assertTrue("run on the embedded profile (-Dlibrary.db=h2-mem)", JpaUtil.profile().isEmbedded());
+        addLoans(20);
+        sql = SqlCapture.install();
+    }
+
+    @AfterClass
+    public static void close() {
+        JpaUtil.close();
+    }
+
+    @Test
+    public void overdueReportIsConstant() {
+        // زي ReportsController.taskOverdue: الإعارات مع الكتاب والعضو، وبعدين الغرامات من الدفتر بالـ ids
+        assertConstant(rows -> 1 + batches(rows), () -> {
+            List<Borrowing> list = repo.findOverdueWithBookAndMember(TODAY, FROM, TODAY, null);
+            List<Integer> ids = new ArrayList<>();
+            for (Borrowing br : list) {
+                br.getBook().getTitle();
+                br.getMember().getName();
+                ids.add(br.getId());
+            }
+            FineService.shared().finesFor(ids);
+            return list.size();
+        });
+    }
+
+    @Test
+    public void overdueReportWithTextFilterIsConstant() {
+        assertConstant(rows -> 1, () -> {
+            List<Borrowing> list = repo.findOverdueWithBookAndMember(TODAY, null, null, "title");
+            for (Borrowing br : list) {
+                br.getBook().getAuthor();
+                br.getMember().getContact();
+            }
+            return list.size();
+        });
+    }
+
+    @Test
+    public void statsReportIsConstant() {
+        // per title + per author + per date
+        assertConstant(rows -> 3, () -> (int) repo.countStats(FROM, TODAY, null).total());
+    }
+
+    @Test
+    public void memberActivityReportIsConstant() {
+        assertConstant(rows -> 1, () -> {
+            int rows = 0;
+            for (BorrowingRepo.MemberActivity a : repo.findMemberActivity(FROM, TODAY, null, "title")) {
+                rows += (int) (a.active() + a.returned());
+            }
+            return rows;
+        });
+    }
+
+    @Test
+    public void loanDetailsForTasksAreConstant() {
+        // CalculateFinesTask / GenerateRemindersTask: صفحة ids من DueDateIndex (دفعة وحدة) → الإعارات + أسماء الأعضاء
+        List<Integer> ids = new ArrayList<>();
+        assertConstant(rows -> 2, () -> {
+            List<Integer> memberIds = new ArrayList<>();
+            for (Borrowing br : repo.findOpenByIdsWithBookAndMember(ids)) {
+                br.getBook().getTitle();
+                memberIds.add(br.getMember().getId());
+            }
+            new MemberRepo().findNamesByIds(memberIds);
+            return ids.size();
+        }, () -> {
+            ids.clear();
+            ids.addAll(openLoanIds());
+        });
+    }
+
+    private static void assertConstant(IntUnaryOperator expected, Supplier<Integer> report) {
+        assertConstant(expected, report, null);
+    }
+
+    // expected: عدد الـ statements حسب عدد الصفوف اللي رجّعها التقرير.
+    // prepare (لو موجود) بيشتغل قبل العدّ، فالـ SQL تبعه مش محسوب
+    private static void assertConstant(IntUnaryOperator expected, Supplier<Integer> report, Runnable prepare) {
+        int[] rows = new int[1];
+        if (prepare != null) prepare.run();
+        int small = sql.during(() -> rows[0] = report.get()).size();
+        int smallRows = rows[0];
+
+        addLoans(300);
+        if (prepare != null) prepare.run();
+        int large = sql.during(() -> rows[0] = report.get()).size();
+
+        assertTrue("report should see more rows after adding loans", rows[0] > smallRows);
+        assertEquals("statements at " + smallRows + " rows", expected.applyAsInt(smallRows), small);
+        assertEquals("statements at " + rows[0] + " rows", expected.applyAsInt(rows[0]), large);
+    }
+
+    private static int batches(int ids) {
+        return (ids + BaseRepo.DEFAULT_BATCH_SIZE - 1) / BaseRepo.DEFAULT_BATCH_SIZE;
+    }
+
+    // أول 500 إعارة مفتوحة (دفعة وحدة، زي صفحة المهام)
+    private static List<Integer> openLoanIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (Object[] row : new BorrowingRepo().findOpenDues()) {
+            if (ids.size() == BaseRepo.DEFAULT_BATCH_SIZE) break;
+            ids.add((Integer) row[0]);
+        }
+        return ids;
+    }
+
+    // كتاب وعضو جداد لكل إعارة (ما في شي بالـ cache)؛ تلت الإعارات مرجّعة، والباقي بعضه متأخر
+    private static void addLoans(int n) {
+        List<Book> books = new ArrayList<>();
+        List<Member> members = new ArrayList<>();
+        List<Borrowing> loans = new ArrayList<>();
+        for (int i = 0; i < n; i++, seq++) {
+            Book b = new Book("Title " + seq, "Author " + (seq % 40));
+            Member m = new Member();
+            m.setName("Member " + seq);
+            m.setContact("member" + seq + "@example.com");
+            books.add(b);
+            members.add(m);
+            Borrowing br = new Borrowing(b, m, TODAY.minusDays(seq % 60));
+            if (seq % 3 == 0) br.setReturnDate(TODAY);
+            loans.add(br);
+        }
+        new BookRepo().saveAll(books);
+        new MemberRepo().saveAll(members);
+        new BorrowingRepo().saveAll(loans);
+        // الـ entities المحفوظة بتدخل الـ L2 cache؛ بنفضّيه عشان القراءة تمشي على القاعدة زي التطبيق بعد فترة
+        JpaUtil.evict(Book.class);
+        JpaUtil.evict(Member.class);
+        JpaUtil.evict(Borrowing.class);
+    }
+}
@@ -0,0 +1,43 @@
+package Repositories;
+
+import org.eclipse.persistence.internal.databaseaccess.DatabaseCall;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import util.JpaUtil;
+
+// بيلقط كل SQL بيتنفّذ على الـ ServerSession (بعد التنفيذ، مع قيم الـ parameters)
+// عشان الـ tests تعدّ الـ statements أو تعملها EXPLAIN
+final class SqlCapture extends SessionEventAdapter {
+
+    private final List<DatabaseCall> calls = Collections.synchronizedList(new ArrayList<>());
+
+    // الـ EntityManagers اللي بتنفتح بعدها بتاخد الـ listener من الـ ServerSession
+    static SqlCapture install() {
+        SqlCapture capture = new SqlCapture();
+        JpaUtil.read(em -> {
+            em.unwrap(JpaEntityManager.class).getServerSession().getEventManager().addListener(capture);
+            return null;
+        });
+        return capture;
+    }
+
+    @Override
+    public void postExecuteCall(SessionEvent event) {
+        if (event.getCall() instanceof DatabaseCall) calls.add((DatabaseCall) event.getCall());
+    }
+
+    // الـ statements اللي نفّذها work بس (على نفس الـ thread، فما في شي تاني بيتخلط معها)
+    List<DatabaseCall> during(Runnable work) {
+        calls.clear();
+        work.run();
+        synchronized (calls) {
+            return new ArrayList<>(calls);
+        }
+    }
+}
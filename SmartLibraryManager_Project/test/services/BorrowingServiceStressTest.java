@@ -0,0 +1,194 @@
+package services;
+
+import Repositories.BookRepo;
+import Repositories.BorrowingRepo;
+import Repositories.BorrowingRepo.Basket;
+import Repositories.BorrowingRepo.Checkout;
+import Repositories.MemberLoanStatsRepo;
+import Repositories.MemberRepo;
+import entities.Book;
+import entities.Member;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import util.JpaUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// آلاف عمليات الإعارة/الإرجاع بالتوازي على H2 بالذاكرة، وبعدها فحص الثوابت من القاعدة:
+//   - ما في كتاب إله أكتر من إعارة مفتوحة، وحالة الكتاب (Borrowed/Available) مطابقة للإعارات المفتوحة
+//   - ما في عضو فوق الحد (قفل PESSIMISTIC_WRITE على صف العضو قبل فحص العدّاد)
+//   - عدّاد MemberLoanStats وفهرس مواعيد الإرجاع مطابقين للجدول
+// الكتب أكتر من اللازم والأعضاء قليلين عشان الحد ينضرب كتير. الحجم: -Dstress.ops=N -Dstress.threads=N
+public class BorrowingServiceStressTest {
+
+    private static final int OPS = Integer.getInteger("stress.ops", 4000);
+    private static final int THREADS = Integer.getInteger("stress.threads", 16);
+    private static final int BOOKS = 300;
+    private static final int MEMBERS = 40;
+    private static final int MAX_ACTIVE = 5;
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private static final List<Integer> bookIds = new ArrayList<>();
+    private static final List<Integer> memberIds = new ArrayList<>();
+
+    @BeforeClass
+    public static void seed() {
+        assertTrue("run on the embedded profile (-Dlibrary.db=h2-mem)", JpaUtil.profile().isEmbedded());
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            Book b = new Book("Title " + i, "Author " + (i % 25));
+            b.setStatus("Available");
+            books.add(b);
+        }
+        new BookRepo().saveAll(books);
+        for (Book b : books) bookIds.add(b.getId());
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            Member m = new Member();
+            m.setName("Member " + i);
+            m.setContact("member" + i + "@example.com");
+            members.add(m);
+        }
+        new MemberRepo().saveAll(members);
+        for (Member m : members) memberIds.add(m.getId());
+    }
+
+    @AfterClass
+    public static void close() {
+        JpaUtil.close();
+    }
+
+    @Test
+    public void concurrentCheckoutsKeepInvariants() throws Exception {
+        DueDateIndex index = new DueDateIndex(new BorrowingRepo());
+        BorrowingService service = new BorrowingService(new BorrowingRepo(), MAX_ACTIVE,
+                BorrowingService.DEFAULT_BLOCK_IF_OVERDUE, index);
+
+        // الإعارات الناجحة اللي لسا ما رجعت (بتنسحب منها الإرجاعات)
+        ConcurrentLinkedQueue<Integer> open = new ConcurrentLinkedQueue<>();
+        Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        long[] latency = new long[OPS];
+        List<Future<?>> futures = new ArrayList<>(OPS);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long t0 = System.nanoTime();
+        try {
+            for (int i = 0; i < OPS; i++) {
+                int op = i;
+                futures.add(pool.submit(() -> {
+                    long start = System.nanoTime();
+                    outcomes.computeIfAbsent(step(service, open), k -> new LongAdder()).increment();
+                    latency[op] = System.nanoTime() - start;
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        long[] sorted = latency.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%d ops on %d threads: %.0f ops/s, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                OPS, THREADS, OPS / seconds, millis(sorted, 0.50), millis(sorted, 0.95), millis(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e6);
+        System.out.println(new TreeMap<>(outcomes));
+
+        assertTrue("the limit was never reached; the run did not exercise it",
+                count(outcomes, "LIMIT_REACHED") + count(outcomes, "BASKET_LIMIT_REACHED") > 0);
+        assertTrue("no book was ever contended", count(outcomes, "BOOK_UNAVAILABLE") > 0);
+        assertEquals("returns of loans that were still open", 0, count(outcomes, "RETURN_MISSED"));
+
+        JpaUtil.read(em -> {
+            long doubleLoans = em.createQuery(
+                    "SELECT COUNT(b) FROM Book b WHERE " +
+                    "(SELECT COUNT(br) FROM Borrowing br WHERE br.book = b AND br.returnDate IS NULL) > 1", Long.class)
+                .getSingleResult();
+            assertEquals("books with more than one open loan", 0, doubleLoans);
+
+            long overLimit = em.createQuery(
+                    "SELECT COUNT(m) FROM Member m WHERE " +
+                    "(SELECT COUNT(br) FROM Borrowing br WHERE br.member = m AND br.returnDate IS NULL) > :max", Long.class)
+                .setParameter("max", (long) MAX_ACTIVE)
+                .getSingleResult();
+            assertEquals("members over the limit", 0, overLimit);
+
+            long borrowedWithoutLoan = em.createQuery(
+                    "SELECT COUNT(b) FROM Book b WHERE LOWER(b.status) = 'borrowed' AND NOT EXISTS " +
+                    "(SELECT br FROM Borrowing br WHERE br.book = b AND br.returnDate IS NULL)", Long.class)
+                .getSingleResult();
+            long loanedButAvailable = em.createQuery(
+                    "SELECT COUNT(b) FROM Book b WHERE LOWER(b.status) = 'available' AND EXISTS " +
+                    "(SELECT br FROM Borrowing br WHERE br.book = b AND br.returnDate IS NULL)", Long.class)
+                .getSingleResult();
+            assertEquals("books marked Borrowed with no open loan", 0, borrowedWithoutLoan);
+            assertEquals("books marked Available with an open loan", 0, loanedButAvailable);
+
+            long openLoans = em.createQuery(
+                    "SELECT COUNT(br) FROM Borrowing br WHERE br.returnDate IS NULL", Long.class)
+                .getSingleResult();
+            assertEquals("open loans vs. successful checkouts minus returns", open.size(), openLoans);
+            assertEquals("due-date index vs. open loans", openLoans, index.size());
+            return null;
+        });
+
+        // reconcile بيرجّع الأعضاء اللي عدّادهم المخزّن كان غلط
+        assertEquals("loan counters that drifted", List.of(),
+                new MemberLoanStatsRepo().reconcile(memberIds).drift());
+    }
+
+    // عملية عشوائية: ربعها إرجاع، عُشرها سلة من 2-3 كتب، والباقي إعارة كتاب واحد
+    private static String step(BorrowingService service, ConcurrentLinkedQueue<Integer> open) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int dice = r.nextInt(20);
+        if (dice < 5) {
+            Integer id = open.poll();
+            if (id == null) return "RETURN_NOTHING_OPEN";
+            return service.returnBook(id, TODAY) ? "RETURNED" : "RETURN_MISSED";
+        }
+        int memberId = memberIds.get(r.nextInt(MEMBERS));
+        if (dice < 7) {
+            List<Integer> basket = new ArrayList<>();
+            int size = 2 + r.nextInt(2);
+            while (basket.size() < size) {
+                Integer id = bookIds.get(r.nextInt(BOOKS));
+                if (!basket.contains(id)) basket.add(id);
+            }
+            Basket b = service.borrowMany(memberId, basket, TODAY);
+            if (b.ok()) b.borrowings().forEach(br -> open.add(br.getId()));
+            return "BASKET_" + b.status();
+        }
+        Checkout c = service.borrow(bookIds.get(r.nextInt(BOOKS)), memberId, TODAY);
+        if (c.ok()) open.add(c.borrowing().getId());
+        return c.status().name();
+    }
+
+    private static long count(Map<String, LongAdder> outcomes, String key) {
+        LongAdder n = outcomes.get(key);
+        return n == null ? 0 : n.sum();
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * quantile))] / 1e6;
+    }
+}